@@ -0,0 +1,80 @@
+package company.evo.jmorphy2
+
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Fork
+import org.openjdk.jmh.annotations.Level
+import org.openjdk.jmh.annotations.Measurement
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import org.openjdk.jmh.annotations.TearDown
+import org.openjdk.jmh.annotations.Warmup
+import java.nio.file.Files
+import java.nio.file.Path
+import java.util.concurrent.TimeUnit
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+// Every fork measures a single build in a fresh JVM, so the numbers are cold start times
+@Fork(10)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+open class DictionaryLoadBenchmarks {
+    @Param("resources", "filesystem", "mmap")
+    lateinit var loader: String
+
+    lateinit var dictDir: Path
+
+    companion object {
+        private const val DICT_RESOURCE_PATH = "/company/evo/jmorphy2/ru/pymorphy2_dicts"
+        private val DICT_FILENAMES = listOf(
+            Dictionary.Builder.META_FILENAME,
+            Dictionary.Builder.WORDS_FILENAME,
+            Dictionary.Builder.PARADIGMS_FILENAME,
+            Dictionary.Builder.SUFFIXES_FILENAME,
+            Dictionary.Builder.GRAMMEMES_FILENAME,
+            Dictionary.Builder.GRAMTAB_OPENCORPORA_FILENAME,
+            ProbabilityEstimator.PROBABILITY_FILENAME,
+        )
+    }
+
+    @Setup(Level.Trial)
+    fun extractDicts() {
+        dictDir = Files.createTempDirectory("jmorphy2-dicts")
+        val resourceLoader = ResourceFileLoader(DICT_RESOURCE_PATH)
+        val predictionSuffixesFilenames = generateSequence(0) { it + 1 }
+            .map { Dictionary.Builder.PREDICTION_SUFFIXES_FILENAME_TEMPLATE.format(it) }
+            .takeWhile { DictionaryLoadBenchmarks::class.java.getResource("$DICT_RESOURCE_PATH/$it") != null }
+        for (filename in DICT_FILENAMES + predictionSuffixesFilenames) {
+            resourceLoader.newStream(filename).use { stream ->
+                Files.copy(stream, dictDir.resolve(filename))
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    fun removeDicts() {
+        dictDir.toFile().deleteRecursively()
+    }
+
+    // A new builder is created every time, so the dictionary cached by Dictionary.Builder is not reused
+    @Benchmark
+    open fun benchBuild(): MorphAnalyzer {
+        val fileLoader = when (loader) {
+            "resources" -> ResourceFileLoader(DICT_RESOURCE_PATH)
+            "filesystem" -> FSFileLoader(dictDir.toString())
+            "mmap" -> FSFileLoader(dictDir.toString(), true)
+            else -> throw IllegalArgumentException(loader)
+        }
+        return AnalyzerBuilder()
+            .fileLoader(fileLoader)
+            .build()
+    }
+
+    class AnalyzerBuilder : MorphAnalyzer.Builder<AnalyzerBuilder>()
+}
@@ -0,0 +1,36 @@
+package company.evo.jmorphy2
+
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import org.openjdk.jmh.infra.Blackhole
+
+@State(Scope.Benchmark)
+open class FuzzyWordsBenchmarks {
+    @Param("1", "2")
+    var maxEdits: Int = 1
+
+    lateinit var words: WordsDAWG
+
+    companion object {
+        private const val DICT_RESOURCE_PATH = "/company/evo/jmorphy2/ru/pymorphy2_dicts"
+        private val TYPOS = arrayOf("карова", "превет", "мошына", "сабака", "телифон", "пачему", "хорошл", "ищё")
+        private const val LIMIT = 10
+    }
+
+    @Setup
+    fun setUp() {
+        words = WordsDAWG(ResourceFileLoader(DICT_RESOURCE_PATH).newBuffer(Dictionary.Builder.WORDS_FILENAME))
+    }
+
+    @Benchmark
+    open fun benchFuzzyWords(blackhole: Blackhole) {
+        for (word in TYPOS) {
+            blackhole.consume(
+                words.fuzzyWords(word, maxEdits, LIMIT)
+            )
+        }
+    }
+}
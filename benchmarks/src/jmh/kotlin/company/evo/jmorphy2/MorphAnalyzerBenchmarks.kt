@@ -9,6 +9,8 @@ import org.openjdk.jmh.infra.Blackhole
 open class MorphAnalyzerBenchmarks {
     val morph = Jmorphy2TestsHelpers.newMorphAnalyzer("ru")
     val words = loadWords()
+    val sortedWords = words.words.sorted()
+    val parseContext = morph.newParseContext()
 
     companion object {
         private const val WORDS_FREQ_RESOURCE = "/company/evo/jmorphy2/unigrams.txt"
@@ -40,4 +42,47 @@ open class MorphAnalyzerBenchmarks {
             )
         }
     }
+
+    @Benchmark
+    open fun benchParseSortedOneByOne(blackhole: Blackhole) {
+        for (word in sortedWords) {
+            blackhole.consume(
+                morph.parse(word)
+            )
+        }
+    }
+
+    @Benchmark
+    open fun benchParseSorted(blackhole: Blackhole) {
+        blackhole.consume(
+            morph.parseSorted(sortedWords)
+        )
+    }
+
+    @Benchmark
+    open fun benchParseContext(blackhole: Blackhole) {
+        for (word in words.words) {
+            blackhole.consume(
+                morph.parse(word, parseContext).size()
+            )
+        }
+    }
+
+    @Benchmark
+    open fun benchNormalForms(blackhole: Blackhole) {
+        for (word in words.words) {
+            blackhole.consume(
+                morph.normalForms(word)
+            )
+        }
+    }
+
+    @Benchmark
+    open fun benchNormalFormsUnordered(blackhole: Blackhole) {
+        for (word in words.words) {
+            blackhole.consume(
+                morph.normalForms(word, false)
+            )
+        }
+    }
 }
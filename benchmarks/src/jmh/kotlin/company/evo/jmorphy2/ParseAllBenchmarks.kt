@@ -0,0 +1,46 @@
+package company.evo.jmorphy2
+
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.Level
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import org.openjdk.jmh.annotations.TearDown
+import org.openjdk.jmh.infra.Blackhole
+import java.util.concurrent.ForkJoinPool
+
+@State(Scope.Benchmark)
+open class ParseAllBenchmarks {
+    @Param("1", "4", "16")
+    var threads: Int = 0
+
+    val morph = Jmorphy2TestsHelpers.newMorphAnalyzer("ru")
+    val words = MorphAnalyzerBenchmarks.loadWords().words.asList()
+
+    lateinit var pool: ForkJoinPool
+
+    @Setup(Level.Trial)
+    fun createPool() {
+        pool = ForkJoinPool(threads)
+    }
+
+    @TearDown(Level.Trial)
+    fun shutdownPool() {
+        pool.shutdown()
+    }
+
+    @Benchmark
+    open fun benchParseAll(blackhole: Blackhole) {
+        blackhole.consume(
+            morph.parseAll(words, pool)
+        )
+    }
+
+    @Benchmark
+    open fun benchNormalFormsAll(blackhole: Blackhole) {
+        blackhole.consume(
+            morph.normalFormsAll(words, pool)
+        )
+    }
+}
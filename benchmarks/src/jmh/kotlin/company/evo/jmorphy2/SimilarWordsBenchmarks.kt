@@ -0,0 +1,56 @@
+package company.evo.jmorphy2
+
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import org.openjdk.jmh.infra.Blackhole
+
+@State(Scope.Benchmark)
+open class SimilarWordsBenchmarks {
+    // Number of substitution points (letter 'е') in a word
+    @Param("0", "1", "2", "3", "4")
+    var substitutions: Int = 0
+
+    @Param("false", "true")
+    var decodePayloads: Boolean = false
+
+    lateinit var words: WordsDAWG
+    lateinit var charSubstitutes: Map<Char, String>
+    lateinit var word: String
+
+    companion object {
+        private const val DICT_RESOURCE_PATH = "/company/evo/jmorphy2/ru/pymorphy2_dicts"
+        private val WORDS = arrayOf("кошка", "елка", "зеленый", "перелет", "перешеек")
+    }
+
+    @Setup
+    fun setUp() {
+        words = WordsDAWG(ResourceFileLoader(DICT_RESOURCE_PATH).newBuffer(Dictionary.Builder.WORDS_FILENAME), decodePayloads)
+        charSubstitutes = Resources.getCharSubstitutes("ru")
+        word = WORDS[substitutions]
+    }
+
+    @Benchmark
+    open fun benchSimilarWords(): List<WordsDAWG.WordForm> {
+        return words.similarWords(word, charSubstitutes)
+    }
+
+    @Benchmark
+    open fun benchSimilarItemsConsumer(blackhole: Blackhole) {
+        words.similarItems(word, charSubstitutes) { key, value, offset, length ->
+            blackhole.consume(key)
+            blackhole.consume(value[offset + length - 1])
+        }
+    }
+
+    @Benchmark
+    open fun benchSimilarWordsConsumer(blackhole: Blackhole) {
+        words.similarWords(word, charSubstitutes) { foundWord, paradigmId, idx ->
+            blackhole.consume(foundWord)
+            blackhole.consume(paradigmId)
+            blackhole.consume(idx)
+        }
+    }
+}
@@ -35,10 +35,8 @@ data class EsVersion(
 object Versions {
     val java = JavaVersion.VERSION_11
 
-    val commonsCodec = "[1.10, 1.11]"
     val commonsIo = "2.4"
     val noggit = "0.8"
-    val caffeine = "3.0.2"
 
     val junit = "4.11"
 
@@ -4,5 +4,6 @@ version = getLibraryVersion()
 
 dependencies {
     implementation("commons-io:commons-io:${Versions.commonsIo}")
-    implementation("commons-codec:commons-codec:${Versions.commonsCodec}")
+
+    testImplementation("junit:junit:${Versions.junit}")
 }
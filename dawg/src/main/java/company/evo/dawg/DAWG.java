@@ -1,38 +1,46 @@
 package company.evo.dawg;
 
-import java.io.DataInput;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.BufferedInputStream;
+import java.nio.ByteBuffer;
 import java.util.List;
 import java.util.ArrayList;
 
-import org.apache.commons.io.input.SwappedDataInputStream;
+import org.apache.commons.io.IOUtils;
 
 
 public class DAWG {
-    protected final DataInput input;
     protected final Dict dict;
 
     public DAWG(InputStream stream) throws IOException {
-        input = new SwappedDataInputStream(new BufferedInputStream(stream));
-        dict = new Dict(input);
+        this(readBuffer(stream));
+    }
+
+    public DAWG(ByteBuffer buffer) {
+        dict = new Dict(buffer);
+    }
+
+    protected static ByteBuffer readBuffer(InputStream stream) throws IOException {
+        return ByteBuffer.wrap(IOUtils.toByteArray(stream));
     }
 
     public List<String> prefixes(String key) throws IOException {
         int index = Dict.ROOT;
         int keyLength = key.length();
         List<String> res = new ArrayList<String>();
-        int pos = 1;
-        for (byte b : key.getBytes("UTF-8")) {
-            index = dict.followByte(b, index);
+        for (int i = 0; i < keyLength; i++) {
+            char c = key.charAt(i);
+            if (Character.isHighSurrogate(c) && i + 1 < keyLength) {
+                index = dict.followChars(key, i++, 2, index);
+            } else {
+                index = dict.followChar(c, index);
+            }
             if (index == Dict.MISSING) {
                 break;
             }
             if (dict.hasValue(index)) {
-                res.add(key.substring(0, pos / 2));
+                res.add(key.substring(0, i + 1));
             }
-            pos++;
         }
         return res;
     }
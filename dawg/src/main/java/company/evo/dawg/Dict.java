@@ -1,21 +1,37 @@
 package company.evo.dawg;
 
-import java.io.DataInput;
-import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.Arrays;
 
 
 class Dict {
     public static final int ROOT = 0;
     public static final int MISSING = -1;
 
-    private int[] units;
-
-    public Dict(DataInput input) throws IOException {
-        int size = input.readInt();
-        units = new int[size];
-        for (int i = 0; i < size; i++) {
-            units[i] = input.readInt();
+    // Heap dictionaries are read from the array, the buffer is only used for mapped files
+    private final int[] unitsArray;
+    private final IntBuffer units;
+
+    // Buffer's position is moved to the end of the dict
+    public Dict(ByteBuffer buffer) {
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        int size = buffer.getInt();
+        ByteBuffer unitsBuffer = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+        unitsBuffer.limit(size * Integer.BYTES);
+        if (buffer.isDirect()) {
+            // Read units in place, so the buffer can be a memory mapped file
+            this.units = unitsBuffer.asIntBuffer();
+            this.unitsArray = null;
+        } else {
+            // Heap buffer is just a temporary storage, convert all units at once
+            int[] units = new int[size];
+            unitsBuffer.asIntBuffer().get(units);
+            this.units = IntBuffer.wrap(units);
+            this.unitsArray = units;
         }
+        buffer.position(buffer.position() + size * Integer.BYTES);
     }
 
     public boolean contains(byte[] key) {
@@ -28,7 +44,14 @@ class Dict {
     }
 
     public int find(byte[] key) {
-        int index = followBytes(key);
+        return valueOrMissing(followBytes(key));
+    }
+
+    public int find(CharSequence key) {
+        return valueOrMissing(followChars(key, ROOT));
+    }
+
+    private int valueOrMissing(int index) {
         if (index == MISSING) {
             return MISSING;
         }
@@ -53,25 +76,147 @@ class Dict {
         return index;
     }
 
+    // Following methods encode characters into UTF-8 on the fly,
+    // unpaired surrogates are replaced with '?' just like String.getBytes does
+    public int followChars(CharSequence key, int index) {
+        return followChars(key, 0, key.length(), index);
+    }
+
+    public int followChars(CharSequence key, int offset, int length, int index) {
+        int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            char c = key.charAt(i);
+            int codePoint = c;
+            if (Character.isSurrogate(c)) {
+                if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(key.charAt(i + 1))) {
+                    codePoint = Character.toCodePoint(c, key.charAt(++i));
+                } else {
+                    codePoint = '?';
+                }
+            }
+            index = followCodePoint(codePoint, index);
+            if (index == MISSING) {
+                return MISSING;
+            }
+        }
+        return index;
+    }
+
+    public int followChars(char[] key, int offset, int length, int index) {
+        int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            char c = key[i];
+            int codePoint = c;
+            if (Character.isSurrogate(c)) {
+                if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(key[i + 1])) {
+                    codePoint = Character.toCodePoint(c, key[++i]);
+                } else {
+                    codePoint = '?';
+                }
+            }
+            index = followCodePoint(codePoint, index);
+            if (index == MISSING) {
+                return MISSING;
+            }
+        }
+        return index;
+    }
+
+    public int followChar(char c, int index) {
+        return followCodePoint(Character.isSurrogate(c) ? '?' : c, index);
+    }
+
+    public int followCodePoint(int codePoint, int index) {
+        if (codePoint < 0x80) {
+            return followByte((byte) codePoint, index);
+        }
+        if (codePoint < 0x800) {
+            // Cyrillic letters are all here
+            index = followByte((byte) (0xC0 | (codePoint >> 6)), index);
+            if (index == MISSING) {
+                return MISSING;
+            }
+            return followByte((byte) (0x80 | (codePoint & 0x3F)), index);
+        }
+        if (codePoint < 0x10000) {
+            index = followByte((byte) (0xE0 | (codePoint >> 12)), index);
+        } else {
+            index = followByte((byte) (0xF0 | (codePoint >> 18)), index);
+            if (index == MISSING) {
+                return MISSING;
+            }
+            index = followByte((byte) (0x80 | ((codePoint >> 12) & 0x3F)), index);
+        }
+        if (index == MISSING) {
+            return MISSING;
+        }
+        index = followByte((byte) (0x80 | ((codePoint >> 6) & 0x3F)), index);
+        if (index == MISSING) {
+            return MISSING;
+        }
+        return followByte((byte) (0x80 | (codePoint & 0x3F)), index);
+    }
+
+    private int unit(int index) {
+        if (unitsArray != null) {
+            return unitsArray[index];
+        }
+        return units.get(index);
+    }
+
     public int followByte(byte c, int index) {
-        int o = Units.offset(units[index]);
+        int o = Units.offset(unit(index));
         int nextIndex = (index ^ o ^ (c & 0xFF)) & Units.PRECISION_MASK;
 
-        if (Units.label(units[nextIndex]) != (c & 0xFF)) {
+        if (Units.label(unit(nextIndex)) != (c & 0xFF)) {
             return MISSING;
         }
 
         return nextIndex;
     }
 
+    // Position of the children block of the unit,
+    // units with the same children share the block
+    public int base(int index) {
+        return (index ^ Units.offset(unit(index))) & Units.PRECISION_MASK;
+    }
+
+    public int size() {
+        return units.limit();
+    }
+
     public boolean hasValue(int index) {
-        return Units.hasLeaf(units[index]);
+        return Units.hasLeaf(unit(index));
     }
 
     public int value(int index) {
-        int o = Units.offset(units[index]);
+        int o = Units.offset(unit(index));
         int valueIndex = (index ^ o) & Units.PRECISION_MASK;
-        return Units.value(units[valueIndex]);
+        return Units.value(unit(valueIndex));
+    }
+
+    // Keeps transitions of the previous key made by followChar,
+    // so a key sharing a prefix with the previous one does not follow it again.
+    // Characters must be followed one by one starting from the root
+    class Path {
+        private char[] chars = new char[16];
+        private int[] indices = new int[16];
+        private int size;
+
+        public int followChar(int pos, char c, int index) {
+            if (pos < size && chars[pos] == c) {
+                return indices[pos];
+            }
+            if (pos == chars.length) {
+                chars = Arrays.copyOf(chars, pos * 2);
+                indices = Arrays.copyOf(indices, pos * 2);
+            }
+            int nextIndex = Dict.this.followChar(c, index);
+            chars[pos] = c;
+            indices[pos] = nextIndex;
+            size = pos + 1;
+            return nextIndex;
+        }
     }
 
     static class Units {
@@ -2,7 +2,7 @@ package company.evo.dawg;
 
 import java.io.InputStream;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
+import java.nio.ByteBuffer;
 
 
 public class IntegerDAWG extends DAWG {
@@ -10,15 +10,52 @@ public class IntegerDAWG extends DAWG {
         super(stream);
     }
 
+    public IntegerDAWG(ByteBuffer buffer) {
+        super(buffer);
+    }
+
     public Integer get(String key) {
         return get(key, null);
     }
 
     public Integer get(String key, Integer defaultValue) {
-        int res = dict.find(key.getBytes(StandardCharsets.UTF_8));
+        int res = dict.find(key);
+        if (res == Dict.MISSING) {
+            return defaultValue;
+        }
+        return res;
+    }
+
+    public int getInt(CharSequence key, int defaultValue) {
+        int res = dict.find(key);
         if (res == Dict.MISSING) {
             return defaultValue;
         }
         return res;
     }
+
+    // Following methods allow to look up several keys with a common prefix
+    // following the prefix only once. Negative index means there is no such prefix
+    public int followPrefix(CharSequence prefix) {
+        return dict.followChars(prefix, Dict.ROOT);
+    }
+
+    public int followPrefix(char[] prefix, int offset, int length) {
+        return dict.followChars(prefix, offset, length, Dict.ROOT);
+    }
+
+    public int followPrefix(int index, byte[] prefix) {
+        if (index == Dict.MISSING) {
+            return Dict.MISSING;
+        }
+        return dict.followBytes(prefix, index);
+    }
+
+    public int getInt(int prefixIndex, byte[] suffix, int defaultValue) {
+        int index = followPrefix(prefixIndex, suffix);
+        if (index == Dict.MISSING || !dict.hasValue(index)) {
+            return defaultValue;
+        }
+        return dict.value(index);
+    }
 }
@@ -1,42 +1,74 @@
 package company.evo.dawg;
 
-import java.io.DataInput;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
 import java.util.Map;
 import java.util.List;
 import java.util.ArrayList;
 
-import org.apache.commons.codec.binary.Base64;
-
 
 public class PayloadsDAWG extends DAWG {
     private static final byte PAYLOAD_SEPARATOR = 0x01;
 
-    private final Guide guide;
-
-    public PayloadsDAWG(InputStream stream) throws IOException {
-        super(stream);
-        guide = new Guide(input);
+    private static final byte[] BASE64_VALUES = new byte[128];
+    static {
+        Arrays.fill(BASE64_VALUES, (byte) -1);
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+        for (int i = 0; i < alphabet.length(); i++) {
+            BASE64_VALUES[alphabet.charAt(i)] = (byte) i;
+        }
+        // URL-safe variant
+        BASE64_VALUES['-'] = 62;
+        BASE64_VALUES['_'] = 63;
     }
 
-    protected List<Payload> valueForIndex(int index, String key) {
-        List<Payload> values = new ArrayList<Payload>();
+    // Searchers do not keep references to a dawg between searches,
+    // so a single searcher per thread is shared by all the dawgs
+    private static final ThreadLocal<Searcher> SEARCHERS = ThreadLocal.withInitial(Searcher::new);
+    private static final ThreadLocal<FuzzySearcher> FUZZY_SEARCHERS = ThreadLocal.withInitial(FuzzySearcher::new);
 
-        Completer completer = new Completer(dict, guide);
+    private final Guide guide;
+    private PayloadIndex payloadIndex;
 
-        int i = 0;
-        completer.start(index);
-        while (completer.next()) {
-            values.add(new Payload(key, decodeValue(completer.getKey())));
-        }
+    public PayloadsDAWG(InputStream stream) throws IOException {
+        this(readBuffer(stream));
+    }
 
-        return values;
+    public PayloadsDAWG(ByteBuffer buffer) {
+        super(buffer);
+        guide = new Guide(buffer);
     }
 
-    protected byte[] decodeValue(byte[] value) {
-        return Base64.decodeBase64(value);
+    // Decodes base64 encoded value into dst, returns number of decoded bytes.
+    // dst must be at least as long as the encoded value
+    protected int decodeValue(byte[] value, int offset, int length, byte[] dst) {
+        int bits = 0;
+        int bitsCount = 0;
+        int decodedLength = 0;
+        int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            byte b = value[i];
+            if (b == '=') {
+                break;
+            }
+            if (b < 0 || BASE64_VALUES[b] < 0) {
+                continue;
+            }
+            bits = (bits << 6) | BASE64_VALUES[b];
+            bitsCount += 6;
+            if (bitsCount >= 8) {
+                bitsCount -= 8;
+                dst[decodedLength++] = (byte) (bits >> bitsCount);
+            }
+        }
+        return decodedLength;
     }
 
     public List<Payload> similarItems(String key) {
@@ -44,106 +76,980 @@ public class PayloadsDAWG extends DAWG {
     }
 
     public List<Payload> similarItems(String key, Map<Character,String> replaceChars) {
-        return similarItems(key, replaceChars, "", Dict.ROOT);
+        List<Payload> items = new ArrayList<Payload>();
+        similarItems(key, replaceChars, (foundKey, value, offset, length) -> {
+            items.add(new Payload(foundKey, Arrays.copyOfRange(value, offset, offset + length)));
+        });
+        return items;
     }
 
-    private List<Payload> similarItems(String key,
+    public void similarItems(CharSequence key,
+                             Map<Character,String> replaceChars,
+                             PayloadConsumer consumer)
+    {
+        Searcher searcher = SEARCHERS.get();
+        if (searcher.dawg != null) {
+            // The consumer searches in a dawg by itself
+            searcher = new Searcher();
+        }
+        searcher.search(this, key, replaceChars, consumer, null, null, null, null);
+    }
+
+    // Same as similarItems but reports ordinals of the payloads, see indexPayloads
+    public void similarItemOrdinals(CharSequence key,
+                                    Map<Character,String> replaceChars,
+                                    PayloadOrdinalConsumer consumer)
+    {
+        if (payloadIndex == null) {
+            throw new IllegalStateException("Payloads are not indexed");
+        }
+        Searcher searcher = SEARCHERS.get();
+        if (searcher.dawg != null) {
+            searcher = new Searcher();
+        }
+        searcher.search(this, key, replaceChars, null, consumer, null, null, null);
+    }
+
+    // Following methods pass found keys as characters,
+    // so nothing is allocated for the keys
+    public void similarRawItems(CharSequence key,
+                                Map<Character,String> replaceChars,
+                                RawPayloadConsumer consumer)
+    {
+        Searcher searcher = SEARCHERS.get();
+        if (searcher.dawg != null) {
+            searcher = new Searcher();
+        }
+        searcher.search(this, key, replaceChars, null, null, consumer, null, null);
+    }
+
+    public void similarRawItemOrdinals(CharSequence key,
                                        Map<Character,String> replaceChars,
-                                       String prefix,
-                                       int index)
+                                       RawOrdinalConsumer consumer)
     {
-        List<Payload> items = new ArrayList<Payload>();
-        int keyLength = key.length();
-        int prefixLength = prefix.length();
-
-        for (int i = prefixLength; i < keyLength; i++) {
-            char c = key.charAt(i);
-
-            if (replaceChars != null) {
-                String replaces = replaceChars.get(c);
-                if (replaces != null) {
-                    int replacesLength = replaces.length();
-                    for (int j = 0; j < replacesLength; j++) {
-                        String r = replaces.substring(j, j + 1);
-                        int nextIndex = dict.followBytes(r.getBytes(StandardCharsets.UTF_8), index);
+        if (payloadIndex == null) {
+            throw new IllegalStateException("Payloads are not indexed");
+        }
+        Searcher searcher = SEARCHERS.get();
+        if (searcher.dawg != null) {
+            searcher = new Searcher();
+        }
+        searcher.search(this, key, replaceChars, null, null, null, consumer, null);
+    }
+
+    public Batch newBatch() {
+        return new Batch();
+    }
+
+    // Looks up keys one after another, every key resumes from the longest common prefix
+    // with the previous one. So sorted keys share most of the transitions.
+    // A batch must not be used from several threads at once
+    public class Batch {
+        private final Searcher searcher = new Searcher();
+        private final Dict.Path mainPath = dict.new Path();
+
+        private Batch() {}
+
+        public void similarItems(CharSequence key,
+                                 Map<Character,String> replaceChars,
+                                 PayloadConsumer consumer)
+        {
+            searcher.search(PayloadsDAWG.this, key, replaceChars, consumer, null, null, null, mainPath);
+        }
+
+        public void similarItemOrdinals(CharSequence key,
+                                        Map<Character,String> replaceChars,
+                                        PayloadOrdinalConsumer consumer)
+        {
+            if (payloadIndex == null) {
+                throw new IllegalStateException("Payloads are not indexed");
+            }
+            searcher.search(PayloadsDAWG.this, key, replaceChars, null, consumer, null, null, mainPath);
+        }
+
+        public void similarRawItems(CharSequence key,
+                                    Map<Character,String> replaceChars,
+                                    RawPayloadConsumer consumer)
+        {
+            searcher.search(PayloadsDAWG.this, key, replaceChars, null, null, consumer, null, mainPath);
+        }
+
+        public void similarRawItemOrdinals(CharSequence key,
+                                           Map<Character,String> replaceChars,
+                                           RawOrdinalConsumer consumer)
+        {
+            if (payloadIndex == null) {
+                throw new IllegalStateException("Payloads are not indexed");
+            }
+            searcher.search(PayloadsDAWG.this, key, replaceChars, null, null, null, consumer, mainPath);
+        }
+    };
+
+    public void fuzzyItems(CharSequence key, int maxEdits, int limit, FuzzyPayloadConsumer consumer) {
+        fuzzyItems(key, null, maxEdits, limit, consumer);
+    }
+
+    // Finds keys within maxEdits Levenshtein distance from the key,
+    // a substitute of a character of the key is not counted as an edit.
+    // Passes all the items of at most limit keys ordered by the distance
+    public void fuzzyItems(CharSequence key,
+                           Map<Character,String> replaceChars,
+                           int maxEdits,
+                           int limit,
+                           FuzzyPayloadConsumer consumer)
+    {
+        FuzzySearcher searcher = FUZZY_SEARCHERS.get();
+        if (searcher.dawg != null) {
+            searcher = new FuzzySearcher();
+        }
+        searcher.search(this, key, replaceChars, maxEdits, limit, consumer, null);
+    }
+
+    public void fuzzyRawItems(CharSequence key,
+                              Map<Character,String> replaceChars,
+                              int maxEdits,
+                              int limit,
+                              RawFuzzyPayloadConsumer consumer)
+    {
+        FuzzySearcher searcher = FUZZY_SEARCHERS.get();
+        if (searcher.dawg != null) {
+            searcher = new FuzzySearcher();
+        }
+        searcher.search(this, key, replaceChars, maxEdits, limit, null, consumer);
+    }
+
+    public boolean hasPayloadIndex() {
+        return payloadIndex != null;
+    }
+
+    // Decodes all the payloads at once and passes them to the consumer without keys.
+    // Payloads get sequential ordinals in the order they are passed,
+    // so subclasses can keep them in plain arrays and use similarItemOrdinals for lookups.
+    // Keys sharing the same set of payloads share a node after the separator
+    // thus every payload is decoded only once.
+    protected void indexPayloads(PayloadConsumer consumer) {
+        PayloadIndex index = new PayloadIndex();
+        BitSet visited = new BitSet(dict.size());
+        Completer completer = new Completer();
+        byte[] value = new byte[16];
+        int ordinal = 0;
+
+        int[] nodes = new int[64];
+        int nodesSize = 0;
+        nodes[nodesSize++] = Dict.ROOT;
+        while (nodesSize > 0) {
+            int nodeIndex = nodes[--nodesSize];
+            int base = dict.base(nodeIndex);
+            if (visited.get(base)) {
+                continue;
+            }
+            visited.set(base);
+
+            byte label = guide.child(nodeIndex);
+            while (label != 0) {
+                int childIndex = dict.followByte(label, nodeIndex);
+                if (childIndex == Dict.MISSING) {
+                    break;
+                }
+                if (label == PAYLOAD_SEPARATOR) {
+                    int payloadsBase = dict.base(childIndex);
+                    if (index.find(payloadsBase) < 0) {
+                        int start = ordinal;
+                        completer.start(dict, guide, childIndex);
+                        while (completer.next()) {
+                            int encodedLength = completer.keyLength();
+                            if (value.length < encodedLength) {
+                                value = new byte[encodedLength];
+                            }
+                            int length = decodeValue(completer.key(), 0, encodedLength, value);
+                            consumer.accept(null, value, 0, length);
+                            ordinal++;
+                        }
+                        index.put(payloadsBase, start, ordinal);
+                    }
+                } else {
+                    if (nodesSize == nodes.length) {
+                        nodes = Arrays.copyOf(nodes, nodesSize * 2);
+                    }
+                    nodes[nodesSize++] = childIndex;
+                }
+                label = guide.sibling(childIndex);
+            }
+        }
+
+        payloadIndex = index;
+    }
+
+    // Enumerates all the distinct keys without decoding their payloads
+    public void keys(KeyConsumer consumer) {
+        keys(Dict.ROOT, new byte[64], 0, consumer);
+    }
+
+    private byte[] keys(int index, byte[] key, int length, KeyConsumer consumer) {
+        byte label = guide.child(index);
+        while (label != 0) {
+            int childIndex = dict.followByte(label, index);
+            if (childIndex == Dict.MISSING) {
+                break;
+            }
+            if (label == PAYLOAD_SEPARATOR) {
+                consumer.accept(new String(key, 0, length, StandardCharsets.UTF_8));
+            } else {
+                if (length == key.length) {
+                    key = Arrays.copyOf(key, length * 2);
+                }
+                key[length] = label;
+                key = keys(childIndex, key, length + 1, consumer);
+            }
+            label = guide.sibling(childIndex);
+        }
+        return key;
+    }
+
+    public Iterator<Payload> itemsWithPrefix(String prefix) {
+        return itemsWithPrefix(prefix, Integer.MAX_VALUE);
+    }
+
+    // Lazily enumerates items which keys start with the prefix in lexicographic order
+    public Iterator<Payload> itemsWithPrefix(String prefix, int limit) {
+        return new PrefixIterator<Payload>(this, prefix, limit) {
+            @Override
+            protected Payload newItem(String key, byte[] value, int offset, int length) {
+                return new Payload(key, Arrays.copyOfRange(value, offset, offset + length));
+            }
+        };
+    }
+
+    protected static short getShort(byte[] data, int offset) {
+        return (short) (((data[offset] & 0xFF) << 8) | (data[offset + 1] & 0xFF));
+    }
+
+    public interface PayloadConsumer {
+        // value is only valid until the method returns
+        void accept(String key, byte[] value, int offset, int length);
+    }
+
+    public interface FuzzyPayloadConsumer {
+        // value is only valid until the method returns
+        void accept(String key, int distance, byte[] value, int offset, int length);
+    }
+
+    public interface RawFuzzyPayloadConsumer {
+        // key and value are only valid until the method returns
+        void accept(char[] key, int keyLength, int distance, byte[] value, int offset, int length);
+    }
+
+    public interface KeyConsumer {
+        void accept(String key);
+    }
+
+    public interface PayloadOrdinalConsumer {
+        void accept(String key, int ordinal);
+    }
+
+    public interface RawPayloadConsumer {
+        // key and value are only valid until the method returns
+        void accept(char[] key, int keyLength, byte[] value, int offset, int length);
+    }
+
+    public interface RawOrdinalConsumer {
+        // key is only valid until the method returns
+        void accept(char[] key, int keyLength, int ordinal);
+    }
+
+    protected static abstract class PrefixIterator<T> implements Iterator<T> {
+        private final PayloadsDAWG dawg;
+        private final String prefix;
+        private final int limit;
+        private final Completer completer = new Completer();
+        private boolean hasMore;
+        private int count;
+
+        private T nextItem;
+        private byte[] value = new byte[16];
+        private byte[] lastKey = new byte[16];
+        private int lastKeyLength = -1;
+        private String lastKeyString;
+
+        protected PrefixIterator(PayloadsDAWG dawg, String prefix, int limit) {
+            this.dawg = dawg;
+            this.prefix = prefix;
+            this.limit = limit;
+            int index = dawg.dict.followChars(prefix, Dict.ROOT);
+            if (index != Dict.MISSING) {
+                completer.start(dawg.dict, dawg.guide, index);
+                hasMore = true;
+            }
+        }
+
+        // value is only valid until the method returns
+        protected abstract T newItem(String key, byte[] value, int offset, int length);
+
+        @Override
+        public boolean hasNext() {
+            if (nextItem != null) {
+                return true;
+            }
+            if (!hasMore || count >= limit || !completer.next()) {
+                hasMore = false;
+                return false;
+            }
+
+            byte[] key = completer.key();
+            int keyLength = completer.keyLength();
+            int sepPos = 0;
+            while (key[sepPos] != PAYLOAD_SEPARATOR) {
+                sepPos++;
+            }
+            // Consecutive items usually have the same key
+            if (sepPos != lastKeyLength
+                || !Arrays.equals(key, 0, sepPos, lastKey, 0, sepPos)) {
+                if (lastKey.length < sepPos) {
+                    lastKey = new byte[key.length];
+                }
+                System.arraycopy(key, 0, lastKey, 0, sepPos);
+                lastKeyLength = sepPos;
+                lastKeyString = prefix + new String(key, 0, sepPos, StandardCharsets.UTF_8);
+            }
+
+            int encodedLength = keyLength - sepPos - 1;
+            if (value.length < encodedLength) {
+                value = new byte[encodedLength];
+            }
+            int length = dawg.decodeValue(key, sepPos + 1, encodedLength, value);
+            nextItem = newItem(lastKeyString, value, 0, length);
+            count++;
+            return true;
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            T item = nextItem;
+            nextItem = null;
+            return item;
+        }
+    };
+
+    // Maps children block of a node after the separator to a range of payload ordinals
+    private static class PayloadIndex {
+        // Bases are stored incremented by one, so zero means an empty slot
+        private int[] keys = new int[1024];
+        private int[] starts = new int[1024];
+        private int[] ends = new int[1024];
+        private int size;
+
+        public int find(int base) {
+            int mask = keys.length - 1;
+            int slot = hash(base) & mask;
+            while (keys[slot] != 0) {
+                if (keys[slot] == base + 1) {
+                    return slot;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return -1;
+        }
+
+        public int start(int slot) {
+            return starts[slot];
+        }
+
+        public int end(int slot) {
+            return ends[slot];
+        }
+
+        public void put(int base, int start, int end) {
+            if (size * 2 >= keys.length) {
+                resize();
+            }
+            insert(base + 1, start, end);
+            size++;
+        }
+
+        private void insert(int key, int start, int end) {
+            int mask = keys.length - 1;
+            int slot = hash(key - 1) & mask;
+            while (keys[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+            starts[slot] = start;
+            ends[slot] = end;
+        }
+
+        private void resize() {
+            int[] oldKeys = keys;
+            int[] oldStarts = starts;
+            int[] oldEnds = ends;
+            keys = new int[oldKeys.length * 2];
+            starts = new int[oldKeys.length * 2];
+            ends = new int[oldKeys.length * 2];
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != 0) {
+                    insert(oldKeys[i], oldStarts[i], oldEnds[i]);
+                }
+            }
+        }
+
+        private static int hash(int base) {
+            int h = base * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+    };
+
+    // Walks the dict with an explicit stack of branches instead of recursion.
+    // Every branch starts right after a substituted character and shares
+    // the path buffer with the others: when a branch is popped
+    // the path before its start is the same as when it was pushed.
+    // Branches without substitutions make the main line of the key,
+    // its transitions can be reused by the next key, see Batch.
+    private static class Searcher {
+        private final Completer completer = new Completer();
+        private PayloadsDAWG dawg;
+        private Dict dict;
+        private Dict.Path mainPath;
+        private PayloadConsumer consumer;
+        private PayloadOrdinalConsumer ordinalConsumer;
+        private RawPayloadConsumer rawConsumer;
+        private RawOrdinalConsumer rawOrdinalConsumer;
+
+        private final Replaces replaces = new Replaces();
+
+        private char[] path = new char[16];
+        private byte[] value = new byte[16];
+
+        private int[] branchPos = new int[8];
+        private int[] branchIndex = new int[8];
+        private char[] branchChar = new char[8];
+        private boolean[] branchMain = new boolean[8];
+        private int branchesSize;
+
+        public void search(PayloadsDAWG dawg,
+                           CharSequence key,
+                           Map<Character,String> replaceChars,
+                           PayloadConsumer consumer,
+                           PayloadOrdinalConsumer ordinalConsumer,
+                           RawPayloadConsumer rawConsumer,
+                           RawOrdinalConsumer rawOrdinalConsumer,
+                           Dict.Path mainPath)
+        {
+            int keyLength = key.length();
+            if (path.length < keyLength) {
+                path = new char[keyLength];
+            }
+            replaces.set(replaceChars);
+
+            this.dawg = dawg;
+            this.dict = dawg.dict;
+            this.consumer = consumer;
+            this.ordinalConsumer = ordinalConsumer;
+            this.rawConsumer = rawConsumer;
+            this.rawOrdinalConsumer = rawOrdinalConsumer;
+            this.mainPath = mainPath;
+            try {
+                branchesSize = 0;
+                pushBranch(0, Dict.ROOT, '\0', true);
+                while (branchesSize > 0) {
+                    branchesSize--;
+                    int pos = branchPos[branchesSize];
+                    if (pos > 0) {
+                        path[pos - 1] = branchChar[branchesSize];
+                    }
+                    walk(key, keyLength, pos, branchIndex[branchesSize], branchMain[branchesSize]);
+                }
+            } finally {
+                this.dawg = null;
+                this.dict = null;
+                this.consumer = null;
+                this.ordinalConsumer = null;
+                this.rawConsumer = null;
+                this.rawOrdinalConsumer = null;
+                this.mainPath = null;
+                completer.clear();
+                replaces.clear();
+            }
+        }
+
+        private void walk(CharSequence key, int keyLength, int pos, int index, boolean main) {
+            for (int i = pos; i < keyLength; i++) {
+                char c = key.charAt(i);
+
+                String substitutes = replaces.get(c);
+                if (substitutes != null) {
+                    // Substitutes must be visited before the original character,
+                    // so they are pushed after it
+                    int nextIndex = followChar(i, c, index, main);
+                    if (nextIndex != Dict.MISSING) {
+                        pushBranch(i + 1, nextIndex, c, main);
+                    }
+                    for (int j = substitutes.length() - 1; j >= 0; j--) {
+                        char r = substitutes.charAt(j);
+                        nextIndex = dict.followChar(r, index);
                         if (nextIndex != Dict.MISSING) {
-                            String nextPrefix = prefix + key.substring(prefixLength, i) + r;
-                            items.addAll(similarItems(key, replaceChars, nextPrefix, nextIndex));
+                            pushBranch(i + 1, nextIndex, r, false);
                         }
                     }
+                    return;
+                }
+
+                if (Character.isHighSurrogate(c) && i + 1 < keyLength && Character.isLowSurrogate(key.charAt(i + 1))) {
+                    // The pair is a single character in the dict,
+                    // the main path only keeps transitions of single chars
+                    index = dict.followChars(key, i, 2, index);
+                    if (index == Dict.MISSING) {
+                        return;
+                    }
+                    main = false;
+                    path[i] = c;
+                    path[++i] = key.charAt(i);
+                    continue;
+                }
+
+                index = followChar(i, c, index, main);
+                if (index == Dict.MISSING) {
+                    return;
                 }
+                path[i] = c;
             }
 
-            index = dict.followBytes(Character.toString(c).getBytes(StandardCharsets.UTF_8), index);
+            index = dict.followByte(PAYLOAD_SEPARATOR, index);
             if (index == Dict.MISSING) {
-                return items;
+                return;
             }
-        }
 
-        if (index == Dict.MISSING) {
-            return items;
+            String foundKey = null;
+            if (consumer != null || ordinalConsumer != null) {
+                foundKey = new String(path, 0, keyLength);
+            }
+            if (ordinalConsumer != null || rawOrdinalConsumer != null) {
+                int slot = dawg.payloadIndex.find(dict.base(index));
+                if (slot >= 0) {
+                    int end = dawg.payloadIndex.end(slot);
+                    for (int ordinal = dawg.payloadIndex.start(slot); ordinal < end; ordinal++) {
+                        if (ordinalConsumer != null) {
+                            ordinalConsumer.accept(foundKey, ordinal);
+                        } else {
+                            rawOrdinalConsumer.accept(path, keyLength, ordinal);
+                        }
+                    }
+                }
+                return;
+            }
+            completer.start(dict, dawg.guide, index);
+            while (completer.next()) {
+                int encodedLength = completer.keyLength();
+                if (value.length < encodedLength) {
+                    value = new byte[encodedLength];
+                }
+                int length = dawg.decodeValue(completer.key(), 0, encodedLength, value);
+                if (consumer != null) {
+                    consumer.accept(foundKey, value, 0, length);
+                } else {
+                    rawConsumer.accept(path, keyLength, value, 0, length);
+                }
+            }
         }
 
-        index = dict.followByte(PAYLOAD_SEPARATOR, index);
-        if (index == Dict.MISSING) {
-            return items;
+        private int followChar(int pos, char c, int index, boolean main) {
+            if (main && mainPath != null) {
+                return mainPath.followChar(pos, c, index);
+            }
+            return dict.followChar(c, index);
         }
 
-        return valueForIndex(index, prefix + key.substring(prefixLength));
-    }
+        private void pushBranch(int pos, int index, char c, boolean main) {
+            if (branchesSize == branchPos.length) {
+                int newSize = branchesSize * 2;
+                branchPos = Arrays.copyOf(branchPos, newSize);
+                branchIndex = Arrays.copyOf(branchIndex, newSize);
+                branchChar = Arrays.copyOf(branchChar, newSize);
+                branchMain = Arrays.copyOf(branchMain, newSize);
+            }
+            branchPos[branchesSize] = pos;
+            branchIndex[branchesSize] = index;
+            branchChar[branchesSize] = c;
+            branchMain[branchesSize] = main;
+            branchesSize++;
+        }
+    };
 
-    private class Guide {
-        private byte[] units;
+    // Substitutes of the characters, kept in arrays to not iterate over the map for every character
+    private static class Replaces {
+        private char[] from = new char[0];
+        private String[] to = new String[0];
+        private int size;
 
-        public Guide(DataInput input) throws IOException {
-            int baseSize = input.readInt();
+        public void set(Map<Character,String> replaceChars) {
+            size = 0;
+            if (replaceChars == null) {
+                return;
+            }
+            if (from.length < replaceChars.size()) {
+                from = new char[replaceChars.size()];
+                to = new String[replaceChars.size()];
+            }
+            for (Map.Entry<Character,String> e : replaceChars.entrySet()) {
+                from[size] = e.getKey();
+                to[size] = e.getValue();
+                size++;
+            }
+        }
 
-            int size = baseSize * 2;
-            units = new byte[size];
+        public String get(char c) {
             for (int i = 0; i < size; i++) {
-                units[i] = input.readByte();
+                if (from[i] == c) {
+                    return to[i];
+                }
             }
+            return null;
+        }
+
+        public void clear() {
+            Arrays.fill(to, 0, size, null);
+            size = 0;
+        }
+    };
+
+    // Traverses the dawg along with the rows of the distance matrix,
+    // so a branch is dropped as soon as it cannot match.
+    // Every frame of the stack is a node with the label it was reached by,
+    // a character can take several transitions so a frame keeps decoded part of it.
+    // Found keys are collected first and then passed ordered by the distance,
+    // the buffers are kept between searches.
+    private static class FuzzySearcher {
+        private final Completer completer = new Completer();
+        private final Replaces replaces = new Replaces();
+        private PayloadsDAWG dawg;
+
+        private int[] target = new int[16];
+        private String[] targetSubstitutes = new String[16];
+        private int[][] rows = new int[0][];
+        private int[] path = new int[16];
+
+        private int[] nodes = new int[64];
+        private byte[] labels = new byte[64];
+        private int[] depths = new int[64];
+        private int[] codePoints = new int[64];
+        private int[] pendingBytes = new int[64];
+        private final byte[] childLabels = new byte[256];
+        private final int[] childIndices = new int[256];
+
+        // Characters of all the found keys one after another
+        private char[] foundChars = new char[64];
+        private int foundCharsSize;
+        private int[] foundOffsets = new int[16];
+        private int[] foundLengths = new int[16];
+        private int[] foundDistances = new int[16];
+        // Nodes after the payload separator
+        private int[] foundIndices = new int[16];
+        private int foundSize;
+
+        private char[] key = new char[16];
+        private byte[] value = new byte[16];
+
+        public void search(PayloadsDAWG dawg,
+                           CharSequence key,
+                           Map<Character,String> replaceChars,
+                           int maxEdits,
+                           int limit,
+                           FuzzyPayloadConsumer consumer,
+                           RawFuzzyPayloadConsumer rawConsumer)
+        {
+            this.dawg = dawg;
+            try {
+                replaces.set(replaceChars);
+                int targetLength = setTarget(key);
+                foundSize = 0;
+                foundCharsSize = 0;
+                traverse(targetLength, maxEdits);
+
+                // Distances are small, so the keys are just scanned once for every distance
+                int count = 0;
+                for (int distance = 0; distance <= maxEdits; distance++) {
+                    for (int i = 0; i < foundSize; i++) {
+                        if (count >= limit) {
+                            return;
+                        }
+                        if (foundDistances[i] == distance) {
+                            report(i, consumer, rawConsumer);
+                            count++;
+                        }
+                    }
+                }
+            } finally {
+                this.dawg = null;
+                completer.clear();
+                replaces.clear();
+                Arrays.fill(targetSubstitutes, null);
+            }
+        }
+
+        private int setTarget(CharSequence key) {
+            int targetLength = 0;
+            int i = 0;
+            while (i < key.length()) {
+                int codePoint = Character.codePointAt(key, i);
+                if (targetLength == target.length) {
+                    target = Arrays.copyOf(target, targetLength * 2);
+                    targetSubstitutes = Arrays.copyOf(targetSubstitutes, targetLength * 2);
+                }
+                target[targetLength] = codePoint;
+                targetSubstitutes[targetLength] = Character.isBmpCodePoint(codePoint)
+                    ? replaces.get((char) codePoint) : null;
+                targetLength++;
+                i += Character.charCount(codePoint);
+            }
+            return targetLength;
+        }
+
+        private void traverse(int targetLength, int maxEdits) {
+            Dict dict = dawg.dict;
+            Guide guide = dawg.guide;
+            int maxDepth = targetLength + maxEdits;
+            if (rows.length < maxDepth + 1 || rows[0].length < targetLength + 1) {
+                int rowsSize = Math.max(rows.length, maxDepth + 1);
+                int rowLength = Math.max(rows.length > 0 ? rows[0].length : 0, targetLength + 1);
+                rows = new int[rowsSize][rowLength];
+            }
+            if (path.length < maxDepth) {
+                path = new int[maxDepth];
+            }
+            for (int j = 0; j <= targetLength; j++) {
+                rows[0][j] = j;
+            }
+
+            int framesSize = 0;
+            int nodeIndex = Dict.ROOT;
+            int depth = 0;
+            int codePoint = 0;
+            int pending = 0;
+            while (true) {
+                int childrenSize = 0;
+                byte label = guide.child(nodeIndex);
+                while (label != 0) {
+                    int childIndex = dict.followByte(label, nodeIndex);
+                    if (childIndex == Dict.MISSING) {
+                        break;
+                    }
+                    childLabels[childrenSize] = label;
+                    childIndices[childrenSize] = childIndex;
+                    childrenSize++;
+                    label = guide.sibling(childIndex);
+                }
+                if (framesSize + childrenSize > nodes.length) {
+                    int newSize = Math.max(nodes.length * 2, framesSize + childrenSize);
+                    nodes = Arrays.copyOf(nodes, newSize);
+                    labels = Arrays.copyOf(labels, newSize);
+                    depths = Arrays.copyOf(depths, newSize);
+                    codePoints = Arrays.copyOf(codePoints, newSize);
+                    pendingBytes = Arrays.copyOf(pendingBytes, newSize);
+                }
+                // Reversed to pop children in lexicographic order
+                for (int i = childrenSize - 1; i >= 0; i--) {
+                    nodes[framesSize] = childIndices[i];
+                    labels[framesSize] = childLabels[i];
+                    depths[framesSize] = depth;
+                    codePoints[framesSize] = codePoint;
+                    pendingBytes[framesSize] = pending;
+                    framesSize++;
+                }
+
+                boolean descend = false;
+                while (!descend && framesSize > 0) {
+                    framesSize--;
+                    label = labels[framesSize];
+                    depth = depths[framesSize];
+                    codePoint = codePoints[framesSize];
+                    pending = pendingBytes[framesSize];
+                    nodeIndex = nodes[framesSize];
+
+                    if (pending == 0) {
+                        if (label == PAYLOAD_SEPARATOR) {
+                            int distance = rows[depth][targetLength];
+                            if (distance <= maxEdits) {
+                                addFound(depth, distance, nodeIndex);
+                            }
+                            continue;
+                        }
+                        if ((label & 0x80) == 0) {
+                            codePoint = label;
+                        } else if ((label & 0xE0) == 0xC0) {
+                            codePoint = label & 0x1F;
+                            pending = 1;
+                        } else if ((label & 0xF0) == 0xE0) {
+                            codePoint = label & 0x0F;
+                            pending = 2;
+                        } else {
+                            codePoint = label & 0x07;
+                            pending = 3;
+                        }
+                    } else {
+                        codePoint = (codePoint << 6) | (label & 0x3F);
+                        pending--;
+                    }
+
+                    if (pending == 0) {
+                        if (depth == maxDepth) {
+                            continue;
+                        }
+                        int[] prevRow = rows[depth];
+                        int[] row = rows[depth + 1];
+                        row[0] = depth + 1;
+                        int minDistance = row[0];
+                        for (int j = 1; j <= targetLength; j++) {
+                            int cost = matches(j - 1, codePoint) ? 0 : 1;
+                            row[j] = Math.min(Math.min(prevRow[j] + 1, row[j - 1] + 1), prevRow[j - 1] + cost);
+                            minDistance = Math.min(minDistance, row[j]);
+                        }
+                        if (minDistance > maxEdits) {
+                            continue;
+                        }
+                        path[depth] = codePoint;
+                        depth++;
+                        codePoint = 0;
+                    }
+                    descend = true;
+                }
+                if (!descend) {
+                    break;
+                }
+            }
+        }
+
+        private boolean matches(int pos, int codePoint) {
+            if (target[pos] == codePoint) {
+                return true;
+            }
+            String substitutes = targetSubstitutes[pos];
+            return substitutes != null
+                && Character.isBmpCodePoint(codePoint)
+                && substitutes.indexOf(codePoint) >= 0;
+        }
+
+        private void addFound(int depth, int distance, int index) {
+            if (foundSize == foundOffsets.length) {
+                int newSize = foundSize * 2;
+                foundOffsets = Arrays.copyOf(foundOffsets, newSize);
+                foundLengths = Arrays.copyOf(foundLengths, newSize);
+                foundDistances = Arrays.copyOf(foundDistances, newSize);
+                foundIndices = Arrays.copyOf(foundIndices, newSize);
+            }
+            // Every code point takes at most two chars
+            if (foundChars.length - foundCharsSize < depth * 2) {
+                foundChars = Arrays.copyOf(foundChars, Math.max(foundChars.length * 2, foundCharsSize + depth * 2));
+            }
+            int offset = foundCharsSize;
+            for (int i = 0; i < depth; i++) {
+                foundCharsSize += Character.toChars(path[i], foundChars, foundCharsSize);
+            }
+            foundOffsets[foundSize] = offset;
+            foundLengths[foundSize] = foundCharsSize - offset;
+            foundDistances[foundSize] = distance;
+            foundIndices[foundSize] = index;
+            foundSize++;
+        }
+
+        private void report(int i, FuzzyPayloadConsumer consumer, RawFuzzyPayloadConsumer rawConsumer) {
+            int keyLength = foundLengths[i];
+            int distance = foundDistances[i];
+            String foundKey = null;
+            if (consumer != null) {
+                foundKey = new String(foundChars, foundOffsets[i], keyLength);
+            } else {
+                // The consumer gets the key from the start of the array
+                if (key.length < keyLength) {
+                    key = new char[keyLength];
+                }
+                System.arraycopy(foundChars, foundOffsets[i], key, 0, keyLength);
+            }
+            completer.start(dawg.dict, dawg.guide, foundIndices[i]);
+            while (completer.next()) {
+                int encodedLength = completer.keyLength();
+                if (value.length < encodedLength) {
+                    value = new byte[encodedLength];
+                }
+                int length = dawg.decodeValue(completer.key(), 0, encodedLength, value);
+                if (consumer != null) {
+                    consumer.accept(foundKey, distance, value, 0, length);
+                } else {
+                    rawConsumer.accept(key, keyLength, distance, value, 0, length);
+                }
+            }
+        }
+    };
+
+    private class Guide {
+        // See Dict(ByteBuffer)
+        private final byte[] unitsArray;
+        private final ByteBuffer units;
+
+        public Guide(ByteBuffer buffer) {
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            int size = buffer.getInt() * 2;
+            ByteBuffer unitsBuffer = buffer.slice();
+            unitsBuffer.limit(size);
+            if (buffer.isDirect()) {
+                this.units = unitsBuffer;
+                this.unitsArray = null;
+            } else {
+                byte[] units = new byte[size];
+                unitsBuffer.get(units);
+                this.units = ByteBuffer.wrap(units);
+                this.unitsArray = units;
+            }
+            buffer.position(buffer.position() + size);
         }
 
         public byte child(int index) {
-            return units[index * 2];
+            if (unitsArray != null) {
+                return unitsArray[index * 2];
+            }
+            return units.get(index * 2);
         }
 
         public byte sibling(int index) {
-            return units[index * 2 + 1];
+            if (unitsArray != null) {
+                return unitsArray[index * 2 + 1];
+            }
+            return units.get(index * 2 + 1);
         }
 
         public int size() {
-            return units.length;
+            return units.limit();
         }
     };
 
-    private class Completer {
+    private static class Completer {
         private Dict dict;
         private Guide guide;
 
-        private byte[] key;
+        private byte[] key = new byte[INITIAL_KEY_LENGTH];
         private int keyLength;
-        private ArrayList<Integer> indexStack;
+        private int[] indexStack = new int[INITIAL_KEY_LENGTH + 1];
+        private int indexStackSize;
         private int lastIndex;
 
         private static final int INITIAL_KEY_LENGTH = 9;
 
-        public Completer(Dict dict, Guide guide) {
+        public void start(Dict dict, Guide guide, int index) {
             this.dict = dict;
             this.guide = guide;
-        }
-
-        public void start(int index) {
-            key = new byte[INITIAL_KEY_LENGTH];
             keyLength = 0;
-            indexStack = new ArrayList<Integer>();
-            indexStack.add(index);
+            indexStackSize = 0;
+            pushIndex(index);
             lastIndex = 0;
         }
 
+        public void clear() {
+            dict = null;
+            guide = null;
+        }
+
         public boolean next() {
-            int index = indexStack.get(indexStack.size() - 1);
+            int index = indexStack[indexStackSize - 1];
 
             if (lastIndex != 0) {
                 byte childLabel = guide.child(index);
@@ -162,12 +1068,12 @@ public class PayloadsDAWG extends DAWG {
                             keyLength--;
                         }
 
-                        indexStack.remove(indexStack.size() - 1);
-                        if (indexStack.isEmpty()) {
+                        indexStackSize--;
+                        if (indexStackSize == 0) {
                             return false;
                         }
 
-                        index = indexStack.get(indexStack.size() - 1);
+                        index = indexStack[indexStackSize - 1];
                         if (siblingLabel != 0) {
                             index = follow(siblingLabel, index);
                             if (index == Dict.MISSING) {
@@ -183,10 +1089,14 @@ public class PayloadsDAWG extends DAWG {
             return findTerminal(index);
         }
 
-        public byte[] getKey() {
-            byte[] newKey = new byte[keyLength];
-            System.arraycopy(key, 0, newKey, 0, keyLength);
-            return newKey;
+        // Key is only valid until the next call of next() or start(),
+        // its length is keyLength()
+        public byte[] key() {
+            return key;
+        }
+
+        public int keyLength() {
+            return keyLength;
         }
 
         private int follow(byte label, int index) {
@@ -196,7 +1106,7 @@ public class PayloadsDAWG extends DAWG {
             }
 
             addLabel(label);
-            indexStack.add(nextIndex);
+            pushIndex(nextIndex);
             return nextIndex;
         }
 
@@ -210,7 +1120,7 @@ public class PayloadsDAWG extends DAWG {
                 }
 
                 addLabel(label);
-                indexStack.add(index);
+                pushIndex(index);
             }
 
             lastIndex = index;
@@ -219,14 +1129,21 @@ public class PayloadsDAWG extends DAWG {
 
         private void addLabel(byte label) {
             if (keyLength == key.length) {
-                byte[] newKey = new byte[key.length * 2];
-                System.arraycopy(key, 0, newKey, 0, key.length);
-                key = newKey;
+                key = Arrays.copyOf(key, key.length * 2);
             }
 
             key[keyLength] = label;
             keyLength++;
         }
+
+        private void pushIndex(int index) {
+            if (indexStackSize == indexStack.length) {
+                indexStack = Arrays.copyOf(indexStack, indexStack.length * 2);
+            }
+
+            indexStack[indexStackSize] = index;
+            indexStackSize++;
+        }
     };
 
     public static class Payload {
@@ -0,0 +1,140 @@
+package company.evo.dawg;
+
+import org.junit.Test;
+import org.junit.Before;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+
+// test-int.dawg keys and values:
+// a=1, ab=2, abc=3, a?=4, к=5, кот=6, котик=7, кит=8, я€=9, x😀=10, x😀y=11
+@RunWith(JUnit4.class)
+public class DictTest {
+    private List<Dict> dicts;
+
+    @Before
+    public void setUp() throws IOException {
+        ByteBuffer heapBuffer;
+        try (InputStream stream = getClass().getResourceAsStream("test-int.dawg")) {
+            heapBuffer = DAWG.readBuffer(stream);
+        }
+        ByteBuffer directBuffer = ByteBuffer.allocateDirect(heapBuffer.remaining());
+        directBuffer.put(heapBuffer.duplicate());
+        directBuffer.flip();
+        // Heap units are read from an array, direct ones in place
+        dicts = Arrays.asList(new Dict(heapBuffer), new Dict(directBuffer));
+    }
+
+    @Test
+    public void test_followChars() {
+        for (Dict dict : dicts) {
+            // one, two, three and four bytes characters
+            assertFollowChars(dict, "a", 1);
+            assertFollowChars(dict, "abc", 3);
+            assertFollowChars(dict, "к", 5);
+            assertFollowChars(dict, "котик", 7);
+            assertFollowChars(dict, "я€", 9);
+            assertFollowChars(dict, "x😀", 10);
+            assertFollowChars(dict, "x😀y", 11);
+
+            assertFollowChars(dict, "", Dict.MISSING);
+            assertFollowChars(dict, "b", Dict.MISSING);
+            assertFollowChars(dict, "ко", Dict.MISSING);
+            assertFollowChars(dict, "котики", Dict.MISSING);
+            assertFollowChars(dict, "я", Dict.MISSING);
+            assertFollowChars(dict, "x", Dict.MISSING);
+            // only a half of the emoji
+            assertFollowChars(dict, "x\uD83D", Dict.MISSING);
+        }
+    }
+
+    @Test
+    public void test_followChars_unpairedSurrogates() {
+        for (Dict dict : dicts) {
+            // Unpaired surrogates are encoded as '?' just like String.getBytes does
+            assertFollowChars(dict, "a\uD83D", 4);
+            assertFollowChars(dict, "a\uDE00", 4);
+            assertEquals(4, dict.value(dict.followChar('\uDE00', dict.followChar('a', Dict.ROOT))));
+            // A pair split by the length is not a pair anymore
+            assertEquals(4, dict.value(dict.followChars("xa😀".toCharArray(), 1, 2, Dict.ROOT)));
+            assertEquals(4, dict.value(dict.followChars("a😀", 0, 2, Dict.ROOT)));
+        }
+    }
+
+    @Test
+    public void test_followChars_offset() {
+        for (Dict dict : dicts) {
+            String text = "мой котик";
+            int index = dict.followChars(text, 4, 5, Dict.ROOT);
+            assertEquals(7, dict.value(index));
+            index = dict.followChars(text.toCharArray(), 4, 5, Dict.ROOT);
+            assertEquals(7, dict.value(index));
+            assertEquals(Dict.MISSING, dict.followChars(text, 3, 4, Dict.ROOT));
+        }
+    }
+
+    @Test
+    public void test_followChars_resume() {
+        for (Dict dict : dicts) {
+            int prefixIndex = dict.followChars("ко", Dict.ROOT);
+            assertNotEquals(Dict.MISSING, prefixIndex);
+            assertEquals(6, dict.value(dict.followChars("т", prefixIndex)));
+            assertEquals(7, dict.value(dict.followChars("тик", prefixIndex)));
+            assertEquals(7, dict.value(dict.followChars("котик".toCharArray(), 2, 3, prefixIndex)));
+            assertEquals(Dict.MISSING, dict.followChars("ит", prefixIndex));
+            // Resuming gives the same index as following the whole key
+            assertEquals(dict.followChars("котик", Dict.ROOT), dict.followChars("тик", prefixIndex));
+            assertEquals(dict.followChars("котик", Dict.ROOT),
+                         dict.followBytes("котик".getBytes(StandardCharsets.UTF_8)));
+
+            int emojiIndex = dict.followChars("x😀", Dict.ROOT);
+            assertEquals(11, dict.value(dict.followChars("y", emojiIndex)));
+            assertEquals(11, dict.value(dict.followCodePoint('y', emojiIndex)));
+        }
+    }
+
+    @Test
+    public void test_path() {
+        for (Dict dict : dicts) {
+            Dict.Path path = dict.new Path();
+            assertEquals(6, dict.value(followPath(path, dict, "кот")));
+            // shares "кот" with the previous key
+            assertEquals(7, dict.value(followPath(path, dict, "котик")));
+            // diverges after the first character
+            assertEquals(8, dict.value(followPath(path, dict, "кит")));
+            assertEquals(Dict.MISSING, followPath(path, dict, "кат"));
+            assertEquals(6, dict.value(followPath(path, dict, "кот")));
+            assertEquals(Dict.MISSING, followPath(path, dict, "котики"));
+            assertEquals(7, dict.value(followPath(path, dict, "котик")));
+            assertEquals(1, dict.value(followPath(path, dict, "a")));
+        }
+    }
+
+    private static int followPath(Dict.Path path, Dict dict, String key) {
+        int index = Dict.ROOT;
+        for (int i = 0; i < key.length(); i++) {
+            index = path.followChar(i, key.charAt(i), index);
+            if (index == Dict.MISSING) {
+                return Dict.MISSING;
+            }
+        }
+        return dict.hasValue(index) ? index : Dict.MISSING;
+    }
+
+    private static void assertFollowChars(Dict dict, String key, int expectedValue) {
+        assertEquals(key, expectedValue, dict.find(key));
+        assertEquals(key, expectedValue, dict.find(key.getBytes(StandardCharsets.UTF_8)));
+        int index = dict.followChars(key.toCharArray(), 0, key.length(), Dict.ROOT);
+        int value = index != Dict.MISSING && dict.hasValue(index) ? dict.value(index) : Dict.MISSING;
+        assertEquals(key, expectedValue, value);
+    }
+}
@@ -0,0 +1,392 @@
+package company.evo.dawg;
+
+import org.junit.Test;
+import org.junit.Before;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+
+// test.dawg keys and their hex payloads:
+// a=01, ab=02 ab=0304, abc=050607, b=08090a0b,
+// еж=10, ёж=11, ёлка=12, елка=13, ежик=14, ёжик=15, эж=16, еже=17, ежё=18, ёже=19, ёжё=1a,
+// кот=20, кота=21, коты=22, котик=23, кит=24, ток=25, скот=26, дом=3031, том=3031,
+// x😀=40, x😀y=41, long=0102..14
+@RunWith(JUnit4.class)
+public class PayloadsDAWGTest {
+    private PayloadsDAWG dawg;
+
+    @Before
+    public void setUp() throws IOException {
+        try (InputStream stream = getClass().getResourceAsStream("test.dawg")) {
+            dawg = new PayloadsDAWG(stream);
+        }
+    }
+
+    @Test
+    public void test_similarItems() {
+        assertEquals(Arrays.asList("a:01"), items(dawg.similarItems("a")));
+        assertEquals(Arrays.asList("ab:02", "ab:0304"), items(dawg.similarItems("ab")));
+        assertEquals(Arrays.asList("x😀y:41"), items(dawg.similarItems("x😀y")));
+        assertEquals(Arrays.asList(), items(dawg.similarItems("x\uD83D")));
+        assertEquals(Arrays.asList(), items(dawg.similarItems("")));
+        assertEquals(Arrays.asList(), items(dawg.similarItems("ко")));
+        assertEquals(Arrays.asList(), items(dawg.similarItems("абв")));
+        // without substitutes ё and е are different characters
+        assertEquals(Arrays.asList("еж:10"), items(dawg.similarItems("еж")));
+        assertEquals(Arrays.asList("ёж:11"), items(dawg.similarItems("ёж", new HashMap<>())));
+    }
+
+    @Test
+    public void test_similarItems_order() {
+        Map<Character,String> replaces = new HashMap<>();
+        replaces.put('е', "ё");
+
+        // substitutes go before the original character
+        assertEquals(Arrays.asList("ёж:11", "еж:10"), items(dawg.similarItems("еж", replaces)));
+        assertEquals(Arrays.asList("ёжик:15", "ежик:14"), items(dawg.similarItems("ежик", replaces)));
+        assertEquals(Arrays.asList("ёлка:12", "елка:13"), items(dawg.similarItems("елка", replaces)));
+        // only the characters of the key are substituted
+        assertEquals(Arrays.asList("ёж:11"), items(dawg.similarItems("ёж", replaces)));
+        // a branch is dropped when a substitute is missing
+        assertEquals(Arrays.asList("скот:26"), items(dawg.similarItems("скот", replaces)));
+        // every substitution point doubles the branches,
+        // the first point is branched out first
+        assertEquals(Arrays.asList("ёжё:1a", "ёже:19", "ежё:18", "еже:17"),
+                     items(dawg.similarItems("еже", replaces)));
+
+        // several substitutes are visited in their order
+        replaces.put('е', "ёэ");
+        assertEquals(Arrays.asList("ёж:11", "эж:16", "еж:10"), items(dawg.similarItems("еж", replaces)));
+        replaces.put('е', "эё");
+        assertEquals(Arrays.asList("эж:16", "ёж:11", "еж:10"), items(dawg.similarItems("еж", replaces)));
+
+        // substitutes of different characters
+        replaces.put('е', "ё");
+        replaces.put('о', "и");
+        assertEquals(Arrays.asList("кит:24", "кот:20"), items(dawg.similarItems("кот", replaces)));
+        assertEquals(Arrays.asList("ёжик:15", "ежик:14"), items(dawg.similarItems("ежик", replaces)));
+    }
+
+    @Test
+    public void test_similarItems_consumers() {
+        Map<Character,String> replaces = new HashMap<>();
+        replaces.put('е', "ё");
+        List<String> expected = items(dawg.similarItems("еже", replaces));
+
+        List<String> found = new ArrayList<>();
+        dawg.similarItems("еже", replaces, (key, value, offset, length) -> {
+            found.add(item(key, value, offset, length));
+        });
+        assertEquals(expected, found);
+
+        found.clear();
+        dawg.similarRawItems("еже", replaces, (key, keyLength, value, offset, length) -> {
+            found.add(item(new String(key, 0, keyLength), value, offset, length));
+        });
+        assertEquals(expected, found);
+    }
+
+    @Test
+    public void test_similarItems_nested() {
+        // A consumer can search in the same dawg
+        Map<Character,String> replaces = new HashMap<>();
+        replaces.put('е', "ё");
+        List<String> found = new ArrayList<>();
+        dawg.similarItems("еж", replaces, (key, value, offset, length) -> {
+            found.add(item(key, value, offset, length));
+            found.addAll(items(dawg.similarItems(key + "ик", replaces)));
+        });
+        assertEquals(Arrays.asList("ёж:11", "ёжик:15", "еж:10", "ёжик:15", "ежик:14"), found);
+    }
+
+    @Test
+    public void test_similarItems_reuseCompleter() {
+        // Searches of a thread share the completer, its key buffer grows for long payloads
+        String longItem = "long:0102030405060708090a0b0c0d0e0f1011121314";
+        assertEquals(Arrays.asList("ab:02", "ab:0304"), items(dawg.similarItems("ab")));
+        assertEquals(Arrays.asList(longItem), items(dawg.similarItems("long")));
+        assertEquals(Arrays.asList("ab:02", "ab:0304"), items(dawg.similarItems("ab")));
+        assertEquals(Arrays.asList("b:08090a0b"), items(dawg.similarItems("b")));
+        assertEquals(Arrays.asList(longItem), items(dawg.similarItems("long")));
+        assertEquals(Arrays.asList("дом:3031"), items(dawg.similarItems("дом")));
+        assertEquals(Arrays.asList("том:3031"), items(dawg.similarItems("том")));
+    }
+
+    @Test
+    public void test_batch() {
+        Map<Character,String> replaces = new HashMap<>();
+        replaces.put('е', "ё");
+        List<String> keys = new ArrayList<>();
+        dawg.keys(keys::add);
+        keys.addAll(Arrays.asList("", "к", "ко", "котики", "кат", "x\uD83D", "x😀y", "еже", "еж", "ежик"));
+        // sorted, shuffled and repeated keys
+        List<String> sortedKeys = new ArrayList<>(keys);
+        sortedKeys.sort(null);
+        List<String> shuffledKeys = new ArrayList<>(keys);
+        Collections.shuffle(shuffledKeys, new Random(0));
+        List<String> batchKeys = new ArrayList<>();
+        batchKeys.addAll(sortedKeys);
+        batchKeys.addAll(shuffledKeys);
+        batchKeys.addAll(sortedKeys);
+
+        for (Map<Character,String> replaceChars : Arrays.asList(null, replaces)) {
+            PayloadsDAWG.Batch batch = dawg.newBatch();
+            for (String key : batchKeys) {
+                List<String> found = new ArrayList<>();
+                batch.similarItems(key, replaceChars, (foundKey, value, offset, length) -> {
+                    found.add(item(foundKey, value, offset, length));
+                });
+                assertEquals(key, items(dawg.similarItems(key, replaceChars)), found);
+
+                found.clear();
+                batch.similarRawItems(key, replaceChars, (foundKey, keyLength, value, offset, length) -> {
+                    found.add(item(new String(foundKey, 0, keyLength), value, offset, length));
+                });
+                assertEquals(key, items(dawg.similarItems(key, replaceChars)), found);
+            }
+        }
+    }
+
+    @Test
+    public void test_decodeValue() {
+        Random rnd = new Random(0);
+        byte[] dst = new byte[64];
+        for (int length = 0; length <= 40; length++) {
+            for (int i = 0; i < 20; i++) {
+                byte[] value = new byte[length];
+                rnd.nextBytes(value);
+                assertDecodeValue(value, Base64.getEncoder().encode(value), dst);
+                assertDecodeValue(value, Base64.getUrlEncoder().encode(value), dst);
+            }
+        }
+    }
+
+    @Test
+    public void test_indexPayloads() {
+        List<String> payloads = new ArrayList<>();
+        dawg.indexPayloads((key, value, offset, length) -> {
+            payloads.add(item("", value, offset, length));
+        });
+        assertTrue(dawg.hasPayloadIndex());
+
+        Map<Character,String> replaces = new HashMap<>();
+        replaces.put('е', "ё");
+        List<String> keys = new ArrayList<>();
+        dawg.keys(keys::add);
+        keys.add("");
+        keys.add("ко");
+        keys.add("котики");
+        for (String key : keys) {
+            for (Map<Character,String> replaceChars : Arrays.asList(null, replaces)) {
+                List<String> expected = items(dawg.similarItems(key, replaceChars));
+                List<String> found = new ArrayList<>();
+                dawg.similarItemOrdinals(key, replaceChars, (foundKey, ordinal) -> {
+                    found.add(foundKey + payloads.get(ordinal));
+                });
+                assertEquals(expected, found);
+
+                found.clear();
+                dawg.similarRawItemOrdinals(key, replaceChars, (foundKey, keyLength, ordinal) -> {
+                    found.add(new String(foundKey, 0, keyLength) + payloads.get(ordinal));
+                });
+                assertEquals(expected, found);
+            }
+        }
+    }
+
+    @Test
+    public void test_itemsWithPrefix() {
+        // keys are ordered by their UTF-8 bytes, a key goes before its continuations
+        assertEquals(Arrays.asList("ab:02", "ab:0304", "abc:050607"), prefixItems("ab", Integer.MAX_VALUE));
+        assertEquals(Arrays.asList("кот:20", "кота:21", "котик:23", "коты:22"),
+                     prefixItems("ко", Integer.MAX_VALUE));
+        assertEquals(Arrays.asList("кот:20", "кота:21", "котик:23", "коты:22"),
+                     prefixItems("кот", Integer.MAX_VALUE));
+        assertEquals(Arrays.asList("x😀:40", "x😀y:41"), prefixItems("x😀", Integer.MAX_VALUE));
+        assertEquals(Arrays.asList("x😀:40", "x😀y:41"), prefixItems("x", Integer.MAX_VALUE));
+        assertEquals(Arrays.asList("x😀y:41"), prefixItems("x😀y", Integer.MAX_VALUE));
+        // missing prefixes
+        assertEquals(Arrays.asList(), prefixItems("котики", Integer.MAX_VALUE));
+        assertEquals(Arrays.asList(), prefixItems("я", Integer.MAX_VALUE));
+        assertEquals(Arrays.asList(), prefixItems("x\uD83D", Integer.MAX_VALUE));
+
+        // limit counts items
+        assertEquals(Arrays.asList("ab:02", "ab:0304"), prefixItems("ab", 2));
+        assertEquals(Arrays.asList("кот:20"), prefixItems("ко", 1));
+        assertEquals(Arrays.asList(), prefixItems("ко", 0));
+    }
+
+    @Test
+    public void test_itemsWithPrefix_empty() {
+        // every item of the dawg
+        List<String> expected = new ArrayList<>();
+        dawg.keys((key) -> expected.addAll(items(dawg.similarItems(key))));
+        assertEquals(28, expected.size());
+        assertEquals(expected, prefixItems("", Integer.MAX_VALUE));
+        assertEquals(expected.subList(0, 5), prefixItems("", 5));
+    }
+
+    @Test
+    public void test_itemsWithPrefix_iterator() {
+        Iterator<PayloadsDAWG.Payload> items = dawg.itemsWithPrefix("ab");
+        assertTrue(items.hasNext());
+        assertTrue(items.hasNext());
+        assertEquals("ab", items.next().key);
+        assertEquals("ab", items.next().key);
+        assertEquals("abc", items.next().key);
+        assertFalse(items.hasNext());
+        assertFalse(items.hasNext());
+        try {
+            items.next();
+            fail("NoSuchElementException expected");
+        } catch (NoSuchElementException e) {}
+
+        items = dawg.itemsWithPrefix("я");
+        assertFalse(items.hasNext());
+        try {
+            items.next();
+            fail("NoSuchElementException expected");
+        } catch (NoSuchElementException e) {}
+    }
+
+    @Test
+    public void test_fuzzyItems() {
+        assertEquals(Arrays.asList("кот:0"), fuzzyKeys("кот", null, 0, 10));
+        // within a distance keys go in lexicographic order
+        assertEquals(Arrays.asList("кот:0", "кит:1", "кота:1", "коты:1", "скот:1"),
+                     fuzzyKeys("кот", null, 1, 10));
+        assertEquals(Arrays.asList("кот:0", "кит:1", "кота:1", "коты:1", "скот:1",
+                                   "дом:2", "котик:2", "ток:2", "том:2"),
+                     fuzzyKeys("кот", null, 2, 10));
+        assertEquals(Arrays.asList("котик:1"), fuzzyKeys("котики", null, 2, 10));
+        assertEquals(Arrays.asList("x😀:0", "x😀y:1"), fuzzyKeys("x😀", null, 1, 10));
+        assertEquals(Arrays.asList("x😀y:0", "x😀:1"), fuzzyKeys("x😀y", null, 1, 10));
+        assertEquals(Arrays.asList(), fuzzyKeys("абвгд", null, 2, 10));
+    }
+
+    @Test
+    public void test_fuzzyItems_limit() {
+        // limit counts keys, all the items of a key are passed
+        assertEquals(Arrays.asList("ab:02", "ab:0304", "a:01", "abc:050607", "b:08090a0b"),
+                     fuzzyItems("ab", null, 1, 10));
+        assertEquals(Arrays.asList("ab:02", "ab:0304", "a:01"), fuzzyItems("ab", null, 1, 2));
+        assertEquals(Arrays.asList("ab:02", "ab:0304"), fuzzyItems("ab", null, 1, 1));
+        assertEquals(Arrays.asList(), fuzzyItems("ab", null, 1, 0));
+        // closer keys are passed first
+        assertEquals(Arrays.asList("кот:0", "кит:1", "кота:1"), fuzzyKeys("кот", null, 2, 3));
+        assertEquals(Arrays.asList("кот:0", "кит:1", "кота:1", "коты:1", "скот:1", "дом:2"),
+                     fuzzyKeys("кот", null, 2, 6));
+    }
+
+    @Test
+    public void test_fuzzyItems_replaces() {
+        Map<Character,String> replaces = new HashMap<>();
+        replaces.put('е', "ё");
+
+        assertEquals(Arrays.asList("елка:0"), fuzzyKeys("елка", null, 0, 10));
+        assertEquals(Arrays.asList("елка:0", "ёлка:1"), fuzzyKeys("елка", null, 1, 10));
+        // a substitute is not an edit
+        assertEquals(Arrays.asList("елка:0", "ёлка:0"), fuzzyKeys("елка", replaces, 0, 10));
+        assertEquals(Arrays.asList("елка:1", "ёлка:1"), fuzzyKeys("елки", replaces, 1, 10));
+        assertEquals(Arrays.asList("елка:1"), fuzzyKeys("елки", null, 1, 10));
+        assertEquals(Arrays.asList("еже:0", "ежё:0", "ёже:0", "ёжё:0"), fuzzyKeys("еже", replaces, 0, 10));
+        // only the characters of the key are substituted
+        assertEquals(Arrays.asList("ёлка:0"), fuzzyKeys("ёлка", replaces, 0, 10));
+        assertEquals(Arrays.asList("еже:0", "ежё:0"), fuzzyKeys("еже", replaces, 0, 2));
+    }
+
+    @Test
+    public void test_fuzzyItems_consumers() {
+        Map<Character,String> replaces = new HashMap<>();
+        replaces.put('е', "ё");
+        for (String key : Arrays.asList("кот", "еже", "ab", "x😀y", "long")) {
+            List<String> expected = fuzzyItems(key, replaces, 2, 5);
+            List<String> found = new ArrayList<>();
+            dawg.fuzzyRawItems(key, replaces, 2, 5, (foundKey, keyLength, distance, value, offset, length) -> {
+                found.add(item(new String(foundKey, 0, keyLength), value, offset, length));
+            });
+            assertEquals(key, expected, found);
+        }
+    }
+
+    @Test
+    public void test_fuzzyItems_nested() {
+        // A consumer can search in the same dawg
+        List<String> found = new ArrayList<>();
+        dawg.fuzzyItems("ab", null, 1, 2, (key, distance, value, offset, length) -> {
+            found.add(item(key, value, offset, length));
+            found.addAll(fuzzyKeys(key, null, 0, 10));
+        });
+        assertEquals(Arrays.asList("ab:02", "ab:0", "ab:0304", "ab:0", "a:01", "a:0"), found);
+    }
+
+    private List<String> fuzzyItems(String key, Map<Character,String> replaceChars, int maxEdits, int limit) {
+        List<String> items = new ArrayList<>();
+        dawg.fuzzyItems(key, replaceChars, maxEdits, limit, (foundKey, distance, value, offset, length) -> {
+            items.add(item(foundKey, value, offset, length));
+        });
+        return items;
+    }
+
+    // Found keys with their distances, every key is taken once
+    private List<String> fuzzyKeys(String key, Map<Character,String> replaceChars, int maxEdits, int limit) {
+        List<String> keys = new ArrayList<>();
+        dawg.fuzzyItems(key, replaceChars, maxEdits, limit, (foundKey, distance, value, offset, length) -> {
+            String foundItem = foundKey + ":" + distance;
+            if (!keys.contains(foundItem)) {
+                keys.add(foundItem);
+            }
+        });
+        return keys;
+    }
+
+    private List<String> prefixItems(String prefix, int limit) {
+        List<String> items = new ArrayList<>();
+        dawg.itemsWithPrefix(prefix, limit).forEachRemaining((item) -> {
+            items.add(item(item.key, item.value, 0, item.value.length));
+        });
+        return items;
+    }
+
+    private void assertDecodeValue(byte[] expected, byte[] encoded, byte[] dst) {
+        // value is decoded from the middle of the array
+        byte[] key = new byte[encoded.length + 4];
+        System.arraycopy(encoded, 0, key, 2, encoded.length);
+        int length = dawg.decodeValue(key, 2, encoded.length, dst);
+        assertArrayEquals(expected, Arrays.copyOf(dst, length));
+    }
+
+    static List<String> items(List<PayloadsDAWG.Payload> payloads) {
+        List<String> items = new ArrayList<>();
+        for (PayloadsDAWG.Payload payload : payloads) {
+            items.add(item(payload.key, payload.value, 0, payload.value.length));
+        }
+        return items;
+    }
+
+    static String item(String key, byte[] value, int offset, int length) {
+        StringBuilder item = new StringBuilder(key).append(':');
+        for (int i = offset; i < offset + length; i++) {
+            item.append(String.format("%02x", value[i]));
+        }
+        return item.toString();
+    }
+}
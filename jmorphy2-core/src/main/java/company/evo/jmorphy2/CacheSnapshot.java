@@ -0,0 +1,58 @@
+package company.evo.jmorphy2;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+
+// Text file with the hottest words of a cache, one word per line, see MorphAnalyzer.saveCacheSnapshot.
+// The first line holds the fingerprint of the dictionary, the words of a snapshot
+// saved for another dictionary are discarded
+public final class CacheSnapshot {
+    private static final String HEADER = "jmorphy2-cache-snapshot 1 ";
+
+    private CacheSnapshot() {}
+
+    // The file is replaced atomically, so a snapshot is never read half written
+    public static void write(Path file, String fingerprint, Collection<String> words) throws IOException {
+        Path tmpFile = file.resolveSibling(file.getFileName() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(tmpFile, StandardCharsets.UTF_8)) {
+            writer.write(HEADER);
+            writer.write(fingerprint);
+            writer.newLine();
+            for (String word : words) {
+                writer.write(word);
+                writer.newLine();
+            }
+        }
+        Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Returns an empty list when there is no snapshot or it was saved for another dictionary
+    public static List<String> read(Path file, String fingerprint) throws IOException {
+        if (!Files.isRegularFile(file)) {
+            return Collections.emptyList();
+        }
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            if (!(HEADER + fingerprint).equals(reader.readLine())) {
+                return Collections.emptyList();
+            }
+            List<String> words = new ArrayList<>();
+            String word;
+            while ((word = reader.readLine()) != null) {
+                if (!word.isEmpty()) {
+                    words.add(word);
+                }
+            }
+            return words;
+        }
+    }
+}
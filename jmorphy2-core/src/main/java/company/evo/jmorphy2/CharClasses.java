@@ -0,0 +1,45 @@
+package company.evo.jmorphy2;
+
+
+// Classes of the characters a word consists of, so units that cannot match
+// the word are skipped without running them
+public final class CharClasses {
+    // ASCII digits
+    public static final int DIGIT = 1;
+    // Letters of the latin script
+    public static final int LATIN = 1 << 1;
+    public static final int CYRILLIC = 1 << 2;
+    // ASCII punctuation, the same as \p{Punct}
+    public static final int PUNCTUATION = 1 << 3;
+    public static final int OTHER = 1 << 4;
+
+    private CharClasses() {}
+
+    public static int of(char[] word, int offset, int length) {
+        int classes = 0;
+        int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            char c = word[i];
+            if (c < 128) {
+                if (c >= '0' && c <= '9') {
+                    classes |= DIGIT;
+                } else if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')) {
+                    classes |= LATIN;
+                } else if (c > ' ' && c < 127) {
+                    classes |= PUNCTUATION;
+                } else {
+                    classes |= OTHER;
+                }
+            } else if (c >= 'Ѐ' && c <= 'ԯ') {
+                classes |= CYRILLIC;
+            } else {
+                int codePoint = c;
+                if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(word[i + 1])) {
+                    codePoint = Character.toCodePoint(c, word[++i]);
+                }
+                classes |= Character.UnicodeScript.of(codePoint) == Character.UnicodeScript.LATIN ? LATIN : OTHER;
+            }
+        }
+        return classes;
+    }
+}
@@ -1,14 +1,13 @@
 package company.evo.jmorphy2;
 
-import java.io.DataInput;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.Map;
 import java.util.HashMap;
 import java.util.List;
 
-import org.apache.commons.io.input.SwappedDataInputStream;
-
 public final class Dictionary {
     private final Meta meta;
     private final String[] paradigmPrefixes;
@@ -35,6 +34,7 @@ public final class Dictionary {
 
     public static class Builder {
         private final FileLoader loader;
+        private boolean decodePayloads;
         private Dictionary cachedDict;
 
         public static final String META_FILENAME = "meta.json";
@@ -49,6 +49,13 @@ public final class Dictionary {
             this.loader = loader;
         }
 
+        // Decode all the dawgs payloads at load time instead of every lookup
+        public Builder decodePayloads(boolean decodePayloads) {
+            this.decodePayloads = decodePayloads;
+            this.cachedDict = null;
+            return this;
+        }
+
         @SuppressWarnings("unchecked")
         private Meta parseMeta(InputStream stream) throws IOException {
             Map<String,Object> rawMeta = new HashMap<>();
@@ -66,19 +73,21 @@ public final class Dictionary {
         {
             SuffixesDAWG[] predictionSuffixes = new SuffixesDAWG[num];
             for (int i = 0; i < num; i++) {
-                InputStream suffixesStream = loader.newStream(String.format(filenameTemplate, i));
-                predictionSuffixes[i] = new SuffixesDAWG(suffixesStream);
-                suffixesStream.close();
+                predictionSuffixes[i] = new SuffixesDAWG(loader.newBuffer(String.format(filenameTemplate, i)), decodePayloads);
             }
             return predictionSuffixes;
         }
 
-        private Paradigm[] parseParadigms(InputStream stream) throws IOException {
-            DataInput paradigmsStream = new SwappedDataInputStream(stream);
-            short paradigmCount = paradigmsStream.readShort();
+        private Paradigm[] parseParadigms(ByteBuffer buffer) {
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            short paradigmCount = buffer.getShort();
             Paradigm[] paradigms = new Paradigm[paradigmCount];
             for (int paraId = 0; paraId < paradigmCount; paraId++) {
-                paradigms[paraId] = new Paradigm(paradigmsStream);
+                short size = buffer.getShort();
+                short[] data = new short[size];
+                buffer.asShortBuffer().get(data);
+                buffer.position(buffer.position() + size * Short.BYTES);
+                paradigms[paraId] = new Paradigm(data);
             }
             return paradigms;
         }
@@ -114,23 +123,19 @@ public final class Dictionary {
                 InputStream grammemesStream = loader.newStream(GRAMMEMES_FILENAME);
                 loadGrammemes(tagStorage, grammemesStream);
                 grammemesStream.close();
-                InputStream wordsStream = loader.newStream(WORDS_FILENAME);
-                InputStream paradigmsStream = loader.newStream(PARADIGMS_FILENAME);
                 InputStream suffixesStream = loader.newStream(SUFFIXES_FILENAME);
                 InputStream gramtabStream = loader.newStream(GRAMTAB_OPENCORPORA_FILENAME);
                 cachedDict = new Dictionary(
                     meta,
-                    new WordsDAWG(wordsStream),
+                    new WordsDAWG(loader.newBuffer(WORDS_FILENAME), decodePayloads),
                     parsePredictionSuffixes(loader,
                         PREDICTION_SUFFIXES_FILENAME_TEMPLATE,
                         meta.compileOptions.paradigmPrefixes.length
                     ),
-                    parseParadigms(paradigmsStream),
+                    parseParadigms(loader.newBuffer(PARADIGMS_FILENAME)),
                     parseSuffixes(suffixesStream),
                     parseGramtab(tagStorage, gramtabStream)
                 );
-                wordsStream.close();
-                paradigmsStream.close();
                 suffixesStream.close();
                 gramtabStream.close();
             }
@@ -176,6 +181,51 @@ public final class Dictionary {
         return prefix + stem + suffix;
     }
 
+    public int normalFormLength(short paradigmId, short idx, int wordLength) {
+        Paradigm paradigm = paradigms[paradigmId];
+        return wordLength
+            - paradigmPrefixes[paradigm.getStemPrefixId(idx)].length()
+            - suffixes[paradigm.getStemSuffixId(idx)].length()
+            + paradigmPrefixes[paradigm.getNormPrefixId()].length()
+            + suffixes[paradigm.getNormSuffixId()].length();
+    }
+
+    // Same as buildNormalForm but writes the normal form into dst without allocations,
+    // dst must have room for normalFormLength characters
+    public void buildNormalForm(short paradigmId, short idx,
+                                char[] word, int wordOffset, int wordLength,
+                                char[] dst, int dstOffset) {
+        Paradigm paradigm = paradigms[paradigmId];
+        int stemStart = wordOffset + paradigmPrefixes[paradigm.getStemPrefixId(idx)].length();
+        int stemLength = wordOffset + wordLength - suffixes[paradigm.getStemSuffixId(idx)].length() - stemStart;
+        String prefix = paradigmPrefixes[paradigm.getNormPrefixId()];
+        String suffix = suffixes[paradigm.getNormSuffixId()];
+
+        prefix.getChars(0, prefix.length(), dst, dstOffset);
+        dstOffset += prefix.length();
+        System.arraycopy(word, stemStart, dst, dstOffset, stemLength);
+        dstOffset += stemLength;
+        suffix.getChars(0, suffix.length(), dst, dstOffset);
+    }
+
+    // Character of the normal form at the index without building the normal form
+    public char normalFormCharAt(short paradigmId, short idx,
+                                 char[] word, int wordOffset, int wordLength,
+                                 int index) {
+        Paradigm paradigm = paradigms[paradigmId];
+        String prefix = paradigmPrefixes[paradigm.getNormPrefixId()];
+        if (index < prefix.length()) {
+            return prefix.charAt(index);
+        }
+        index -= prefix.length();
+        int stemStart = paradigmPrefixes[paradigm.getStemPrefixId(idx)].length();
+        int stemLength = wordLength - suffixes[paradigm.getStemSuffixId(idx)].length() - stemStart;
+        if (index < stemLength) {
+            return word[wordOffset + stemStart + index];
+        }
+        return suffixes[paradigm.getNormSuffixId()].charAt(index - stemLength);
+    }
+
     public String buildStem(short paradigmId, short idx, String word) {
         Paradigm paradigm = paradigms[paradigmId];
         String prefix = paradigmPrefixes[paradigm.getStemPrefixId(idx)];
@@ -237,7 +287,7 @@ public final class Dictionary {
             }
             pymorphy2Version = (String) meta.get("pymorphy2_version");
             languageCode = ((String) meta.get("language_code")).toLowerCase();
-            compiledAt = (String) meta.get("compile_at");
+            compiledAt = (String) meta.get("compiled_at");
             source = (String) meta.get("source");
             sourceVersion = (String) meta.get("source_version");
             sourceRevision = (String) meta.get("source_revision");
@@ -257,21 +307,44 @@ public final class Dictionary {
             ptwMinWordFreq = (long) (meta.getOrDefault("P(t|w)_min_word_freq", -1L));
             corpusRevision = (String) (meta.getOrDefault("corpus_revision", ""));
         }
+
+        // Changes when the dictionary is recompiled, so data saved for another dictionary can be detected
+        public String fingerprint() {
+            String key = String.join(
+                "\n",
+                formatVersion,
+                languageCode,
+                String.valueOf(compiledAt),
+                String.valueOf(source),
+                String.valueOf(sourceVersion),
+                String.valueOf(sourceRevision),
+                String.valueOf(sourceLexemesCount),
+                String.valueOf(sourceLinksCount),
+                String.valueOf(gramtabLength),
+                String.valueOf(paradigmsLength),
+                String.valueOf(suffixesLength),
+                String.valueOf(wordsDawgLength),
+                String.valueOf(ptwUniqueWords),
+                String.valueOf(ptwOutcomes),
+                corpusRevision
+            );
+            long h = 0xcbf29ce484222325L;
+            for (int i = 0; i < key.length(); i++) {
+                h = (h ^ key.charAt(i)) * 0x100000001b3L;
+            }
+            return String.format("%016x", h);
+        }
     }
 
     static public class Paradigm {
         private final short[] data;
         private final int length;
 
-        public Paradigm(DataInput input) throws IOException {
-            short size = input.readShort();
-            assert size % 3 == 0 : size;
+        public Paradigm(short[] data) {
+            assert data.length % 3 == 0 : data.length;
 
-            this.data = new short[size];
-            for (int i = 0; i < size; i++) {
-                this.data[i] = input.readShort();
-            }
-            this.length = size / 3;
+            this.data = data;
+            this.length = data.length / 3;
         }
 
         public int getNormSuffixId() {
@@ -1,20 +1,47 @@
 package company.evo.jmorphy2;
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.File;
 import java.io.InputStream;
 import java.io.FileInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 
 
 public class FSFileLoader extends FileLoader {
     private final String basePath;
+    private final boolean mmap;
 
     public FSFileLoader(String basePath) {
+        this(basePath, false);
+    }
+
+    public FSFileLoader(String basePath, boolean mmap) {
         this.basePath = basePath;
+        this.mmap = mmap;
     }
 
     @Override
     public InputStream newStream(String filename) throws IOException {
         return new FileInputStream(new File(basePath, filename));
     }
+
+    @Override
+    public ByteBuffer newBuffer(String filename) throws IOException {
+        try (FileChannel channel = FileChannel.open(new File(basePath, filename).toPath(), StandardOpenOption.READ)) {
+            if (mmap) {
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+            ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    throw new EOFException(filename);
+                }
+            }
+            buffer.flip();
+            return buffer;
+        }
+    }
 }
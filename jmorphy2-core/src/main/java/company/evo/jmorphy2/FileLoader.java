@@ -1,9 +1,22 @@
 package company.evo.jmorphy2;
 
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import org.apache.commons.io.IOUtils;
 
 
 public abstract class FileLoader {
     public abstract InputStream newStream(String filename) throws IOException;
+
+    public ByteBuffer newBuffer(String filename) throws IOException {
+        try (InputStream stream = newStream(filename)) {
+            if (stream == null) {
+                throw new FileNotFoundException(filename);
+            }
+            return ByteBuffer.wrap(IOUtils.toByteArray(stream));
+        }
+    }
 }
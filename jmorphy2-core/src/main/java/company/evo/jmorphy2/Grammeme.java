@@ -10,8 +10,11 @@ public class Grammeme {
     public final String parentValue;
     public final String russianValue;
     public final String description;
+    // Dense number of the grammeme in the storage, see Tag.grammemesMask
+    public final int ordinal;
 
-    private final Tag.Storage storage;
+    final Tag.Storage storage;
+    private final int hashCode;
 
     public Grammeme(List<String> grammemeInfo, Tag.Storage storage) {
         this(grammemeInfo.get(0),
@@ -33,6 +36,8 @@ public class Grammeme {
         this.russianValue = russianValue;
         this.description = description;
         this.storage = storage;
+        this.ordinal = storage != null ? storage.newGrammemeOrdinal() : -1;
+        this.hashCode = Objects.hash(key);
     }
 
     private String stringOrNull(String s) {
@@ -43,20 +48,11 @@ public class Grammeme {
     }
 
     public Grammeme getParent() {
-        return storage.getGrammeme(parentValue);
+        return storage.getParent(this);
     }
 
     public Grammeme getRoot() {
-        Grammeme grammeme = this;
-        Grammeme parentGrammeme = grammeme.getParent();
-        if (parentGrammeme == null) {
-            return null;
-        }
-        while (parentGrammeme != null) {
-            grammeme = parentGrammeme;
-            parentGrammeme = grammeme.getParent();
-        }
-        return grammeme;
+        return storage.getRoot(this);
     }
 
     @Override
@@ -71,7 +67,7 @@ public class Grammeme {
 
     @Override
     public int hashCode() {
-        return Objects.hash(key);
+        return hashCode;
     }
 
     @Override
@@ -0,0 +1,157 @@
+package company.evo.jmorphy2;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+
+// Immutable parse results of the most frequent words, see MorphAnalyzer.Builder.hotWords.
+// Words are indexed by a minimal perfect hash built by the hash and displace algorithm:
+// words are split into buckets and for every bucket, starting from the largest one,
+// a seed is found which puts all its words into free slots. So a lookup finds
+// the only slot where the word can be and the table is read without locks
+public final class HotWordTable {
+    private static final long SEED_MULTIPLIER = 0x9E3779B97F4A7C15L;
+    private static final int MAX_SEED = 1 << 24;
+
+    private final int[] seeds;
+    private final String[] words;
+    private final List<List<ParsedWord>> parsedWords;
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+
+    public HotWordTable(Map<String,List<ParsedWord>> results) {
+        int n = results.size();
+        String[] keys = results.keySet().toArray(new String[0]);
+        seeds = new int[Math.max(1, n / 2)];
+        words = new String[n];
+        parsedWords = new ArrayList<>(Collections.nCopies(n, null));
+
+        List<List<Integer>> buckets = new ArrayList<>(seeds.length);
+        for (int i = 0; i < seeds.length; i++) {
+            buckets.add(new ArrayList<>());
+        }
+        long[] hashes = new long[n];
+        for (int i = 0; i < n; i++) {
+            hashes[i] = hash(keys[i]);
+            buckets.get(bucket(hashes[i])).add(i);
+        }
+        Integer[] order = new Integer[seeds.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Integer.compare(buckets.get(b).size(), buckets.get(a).size()));
+
+        int[] slots = new int[0];
+        for (int b : order) {
+            List<Integer> bucket = buckets.get(b);
+            if (bucket.isEmpty()) {
+                break;
+            }
+            if (slots.length < bucket.size()) {
+                slots = new int[bucket.size()];
+            }
+            int seed = 0;
+            while (!place(bucket, hashes, seed, slots)) {
+                if (++seed == MAX_SEED) {
+                    throw new IllegalStateException("Cannot build a perfect hash for the hot words");
+                }
+            }
+            seeds[b] = seed;
+            for (int i = 0; i < bucket.size(); i++) {
+                String key = keys[bucket.get(i)];
+                words[slots[i]] = key;
+                parsedWords.set(slots[i], results.get(key));
+            }
+        }
+    }
+
+    // Reads the most frequent words from the lines of the word and its count separated by whitespaces,
+    // other columns are ignored. Counts of the words which differ only by case are summed
+    public static List<String> readFrequencyList(Path file, int maxWords) throws IOException {
+        Map<String,Long> counts = new HashMap<>();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.trim().split("\\s+");
+                if (parts.length < 2) {
+                    continue;
+                }
+                counts.merge(parts[0].toLowerCase(), Long.parseLong(parts[1]), Long::sum);
+            }
+        }
+        List<String> words = new ArrayList<>(counts.keySet());
+        words.sort((a, b) -> Long.compare(counts.get(b), counts.get(a)));
+        return words.subList(0, Math.min(maxWords, words.size()));
+    }
+
+    // Returns null when the word is not in the table
+    public List<ParsedWord> get(String wordLower) {
+        if (words.length > 0) {
+            long hash = hash(wordLower);
+            int slot = slot(hash, seeds[bucket(hash)]);
+            if (wordLower.equals(words[slot])) {
+                hitCount.increment();
+                return parsedWords.get(slot);
+            }
+        }
+        missCount.increment();
+        return null;
+    }
+
+    public int size() {
+        return words.length;
+    }
+
+    // Nothing is evicted from the table
+    public ParseCache.Stats getStats() {
+        return new ParseCache.Stats(hitCount.sum(), missCount.sum(), 0);
+    }
+
+    private boolean place(List<Integer> bucket, long[] hashes, int seed, int[] slots) {
+        for (int i = 0; i < bucket.size(); i++) {
+            int slot = slot(hashes[bucket.get(i)], seed);
+            if (words[slot] != null) {
+                return false;
+            }
+            for (int j = 0; j < i; j++) {
+                if (slots[j] == slot) {
+                    return false;
+                }
+            }
+            slots[i] = slot;
+        }
+        return true;
+    }
+
+    private int bucket(long hash) {
+        return (int) Long.remainderUnsigned(hash, seeds.length);
+    }
+
+    private int slot(long hash, int seed) {
+        return (int) Long.remainderUnsigned(mix(hash ^ (seed * SEED_MULTIPLIER)), words.length);
+    }
+
+    private static long hash(String word) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < word.length(); i++) {
+            h = (h ^ word.charAt(i)) * 0x100000001b3L;
+        }
+        return mix(h);
+    }
+
+    private static long mix(long h) {
+        h = (h ^ (h >>> 33)) * 0xff51afd7ed558ccdL;
+        h = (h ^ (h >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return h ^ (h >>> 33);
+    }
+}
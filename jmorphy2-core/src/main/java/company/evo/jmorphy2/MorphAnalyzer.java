@@ -1,21 +1,42 @@
 package company.evo.jmorphy2;
 
 import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Map;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Set;
-import java.util.HashSet;
 import java.util.Collection;
-import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.function.BiFunction;
 
 import company.evo.jmorphy2.units.*;
 
 
 public class MorphAnalyzer {
+    // Minimal number of unique words parsed by a single task of parseAll
+    private static final int MIN_BATCH_SIZE = 256;
+
     private final Tag.Storage tagStorage;
     private final List<AnalyzerUnit> units;
     private final ProbabilityEstimator prob;
+    private final ParseCache cache;
+    private final HotWordTable hotWords;
+    // Set by the builder after the analyzer is created, read from any thread
+    private volatile CompletableFuture<Integer> cachePreload = CompletableFuture.completedFuture(0);
+    // Contexts of the methods returning lists, the results are copied out of a context
+    // before the method returns, so a single context per thread is enough.
+    // A context is released after copying, so an idle context of a pooled thread
+    // does not keep the units and dictionaries of a dropped analyzer alive
+    private final ThreadLocal<ParseContext> contexts = ThreadLocal.withInitial(() -> new ParseContext(this, false));
 
     public static class Builder<T extends Builder<T>> {
         // private static final String ENV_DICT_PATH = "PYMORPHY2_DICT_PATH";
@@ -25,7 +46,18 @@ public class MorphAnalyzer {
         protected Tag.Storage tagStorage = new Tag.Storage();
 
         private String dictPath;
+        private boolean mmap;
+        private boolean decodePayloads;
+        private int fuzzyMaxEdits;
         private FileLoader loader;
+        private int cacheSize = DEFAULT_CACHE_SIZE;
+        private ParseCache cache;
+        private long offHeapCacheSize;
+        private Path offHeapCacheFile;
+        private Path cacheSnapshot;
+        private Executor preloadExecutor = ForkJoinPool.commonPool();
+        private Path hotWordsFile;
+        private int maxHotWords;
         private Map<Character,String> charSubstitutes;
         private List<AnalyzerUnit.Builder> unitBuilders;
 
@@ -39,6 +71,22 @@ public class MorphAnalyzer {
             return self();
         }
 
+        public final T mmap(boolean mmap) {
+            this.mmap = mmap;
+            return self();
+        }
+
+        public final T decodePayloads(boolean decodePayloads) {
+            this.decodePayloads = decodePayloads;
+            return self();
+        }
+
+        // Enables lookup of dictionary words with typos for words unknown to the dictionary
+        public final T fuzzyMaxEdits(int maxEdits) {
+            this.fuzzyMaxEdits = maxEdits;
+            return self();
+        }
+
         public final T fileLoader(FileLoader loader) {
             this.loader = loader;
             return self();
@@ -49,22 +97,97 @@ public class MorphAnalyzer {
             return self();
         }
 
+        // Results of the most frequent words are cached, see TinyLfuParseCache
+        public final T cacheSize(int cacheSize) {
+            this.cacheSize = cacheSize;
+            return self();
+        }
+
+        public final T cache(ParseCache cache) {
+            this.cache = cache;
+            return self();
+        }
+
+        // Results are also kept outside of the heap, see OffHeapParseCache
+        public final T offHeapCacheSize(long maxBytes) {
+            this.offHeapCacheSize = maxBytes;
+            return self();
+        }
+
+        // The off-heap cache is kept in the mapped file instead of direct memory
+        public final T offHeapCacheFile(Path file) {
+            this.offHeapCacheFile = file;
+            return self();
+        }
+
+        // Words of the snapshot are parsed into the cache in the background after the analyzer is built,
+        // see MorphAnalyzer.saveCacheSnapshot
+        public final T cacheSnapshot(Path file) {
+            this.cacheSnapshot = file;
+            return self();
+        }
+
+        public final T preloadExecutor(Executor executor) {
+            this.preloadExecutor = executor;
+            return self();
+        }
+
+        // Results of the most frequent words of the list are parsed when the analyzer is built,
+        // see HotWordTable.readFrequencyList for the format
+        public final T hotWords(Path frequencyList, int maxWords) {
+            this.hotWordsFile = frequencyList;
+            this.maxHotWords = maxWords;
+            return self();
+        }
+
+        protected HotWordTable buildHotWords(MorphAnalyzer morph) throws IOException {
+            if (hotWordsFile == null || maxHotWords <= 0) {
+                return null;
+            }
+            List<String> words = new ArrayList<>(HotWordTable.readFrequencyList(hotWordsFile, maxHotWords));
+            Collections.sort(words);
+            Map<String,List<ParsedWord>> results = new HashMap<>();
+            ParseContext context = morph.newParseContext();
+            for (String word : words) {
+                morph.parse(word, context);
+                if (!context.dependsOnCase()) {
+                    results.put(word, Collections.unmodifiableList(context.getParsedWords()));
+                }
+            }
+            return new HotWordTable(results);
+        }
+
+        protected ParseCache buildCache(List<AnalyzerUnit> units) {
+            ParseCache heapCache = cache;
+            if (heapCache == null && cacheSize > 0) {
+                heapCache = new TinyLfuParseCache(cacheSize);
+            }
+            if (offHeapCacheSize <= 0) {
+                return heapCache;
+            }
+            ParseCache offHeapCache = new OffHeapParseCache(
+                new ParsedWordCodec(tagStorage, units), offHeapCacheSize, offHeapCacheFile
+            );
+            return heapCache != null ? new TieredParseCache(heapCache, offHeapCache) : offHeapCache;
+        }
+
         protected Units prepare() throws IOException {
             if (loader == null) {
                 if (dictPath == null) {
                     dictPath = System.getProperty(DICT_PATH_VAR);
                 }
-                loader = new FSFileLoader(dictPath);
+                loader = new FSFileLoader(dictPath, mmap);
             }
 
             if (unitBuilders == null) {
-                Dictionary.Builder dictBuilder = new Dictionary.Builder(loader);
+                Dictionary.Builder dictBuilder = new Dictionary.Builder(loader)
+                    .decodePayloads(decodePayloads);
                 String langCode = dictBuilder.build(tagStorage).getMeta().languageCode.toUpperCase();
                 Set<String> knownPrefixes = Resources.getKnownPrefixes(langCode);
                 if (charSubstitutes == null) {
                     charSubstitutes = Resources.getCharSubstitutes(langCode);
                 }
-                AnalyzerUnit.Builder dictUnitBuilder = new DictionaryUnit.Builder(dictBuilder, true, 1.0f)
+                DictionaryUnit.Builder dictUnitBuilder = new DictionaryUnit.Builder(dictBuilder, true, 1.0f)
                     .charSubstitutes(charSubstitutes);
                 unitBuilders = new ArrayList<>();
                 unitBuilders.add(dictUnitBuilder);
@@ -76,6 +199,10 @@ public class MorphAnalyzer {
                     unitBuilders.add(new KnownPrefixUnit.Builder(dictUnitBuilder, knownPrefixes, true, 0.75f));
                 }
                 unitBuilders.add(new UnknownPrefixUnit.Builder(dictUnitBuilder, true, 0.5f));
+                if (fuzzyMaxEdits > 0) {
+                    unitBuilders.add(new FuzzyDictionaryUnit.Builder(dictUnitBuilder, true, 0.5f)
+                        .maxEdits(fuzzyMaxEdits));
+                }
                 unitBuilders.add(new KnownSuffixUnit.Builder(dictBuilder, true, 0.5f)
                     .charSubstitutes(charSubstitutes));
                 unitBuilders.add(new UnknownUnit.Builder(true, 1.0f));
@@ -100,7 +227,28 @@ public class MorphAnalyzer {
 
         public MorphAnalyzer build() throws IOException {
             var prepared = prepare();
-            return new MorphAnalyzer(tagStorage, prepared.units, prepared.probabilityEstimator);
+            var morph = new MorphAnalyzer(tagStorage, prepared.units, prepared.probabilityEstimator);
+            morph = new MorphAnalyzer(
+                tagStorage,
+                prepared.units,
+                prepared.probabilityEstimator,
+                buildCache(prepared.units),
+                buildHotWords(morph)
+            );
+            preload(morph);
+            return morph;
+        }
+
+        protected final void preload(MorphAnalyzer morph) throws IOException {
+            String fingerprint = morph.getDictFingerprint();
+            if (cacheSnapshot == null || morph.cache == null || fingerprint == null) {
+                return;
+            }
+            // The snapshot is read right away, so only parsing is left to the executor
+            List<String> words = CacheSnapshot.read(cacheSnapshot, fingerprint);
+            if (!words.isEmpty()) {
+                morph.cachePreload = morph.preloadCache(words, preloadExecutor);
+            }
         }
     };
 
@@ -118,10 +266,92 @@ public class MorphAnalyzer {
         Tag.Storage tagStorage,
         List<AnalyzerUnit> units,
         ProbabilityEstimator prob
+    ) {
+        this(tagStorage, units, prob, null);
+    }
+
+    protected MorphAnalyzer(
+        Tag.Storage tagStorage,
+        List<AnalyzerUnit> units,
+        ProbabilityEstimator prob,
+        ParseCache cache
+    ) {
+        this(tagStorage, units, prob, cache, null);
+    }
+
+    protected MorphAnalyzer(
+        Tag.Storage tagStorage,
+        List<AnalyzerUnit> units,
+        ProbabilityEstimator prob,
+        ParseCache cache,
+        HotWordTable hotWords
     ) {
         this.tagStorage = tagStorage;
         this.units = units;
         this.prob = prob;
+        this.cache = cache;
+        this.hotWords = hotWords;
+    }
+
+    // Returns null when the cache is disabled
+    public ParseCache getCache() {
+        return cache;
+    }
+
+    // Returns null when there are no hot words, the hit rate is reported by getStats
+    public HotWordTable getHotWords() {
+        return hotWords;
+    }
+
+    // Completes with the number of words parsed from the snapshot of the cache, see Builder.cacheSnapshot
+    public CompletableFuture<Integer> getCachePreload() {
+        return cachePreload;
+    }
+
+    // Returns null when there is no dictionary unit
+    private String getDictFingerprint() {
+        for (AnalyzerUnit unit : units) {
+            if (unit instanceof DictionaryUnit) {
+                return ((DictionaryUnit) unit).getDict().getMeta().fingerprint();
+            }
+        }
+        return null;
+    }
+
+    // Saves at most maxWords of the hottest cached words, returns the number of saved words
+    public int saveCacheSnapshot(Path file, int maxWords) throws IOException {
+        String fingerprint = getDictFingerprint();
+        if (cache == null || fingerprint == null) {
+            return 0;
+        }
+        List<String> words = cache.hotWords(maxWords);
+        CacheSnapshot.write(file, fingerprint, words);
+        return words.size();
+    }
+
+    // Parses the words into the cache by batches which are run by the executor,
+    // completes with the number of parsed words
+    public CompletableFuture<Integer> preloadCache(Collection<String> words, Executor executor) {
+        if (cache == null) {
+            return CompletableFuture.completedFuture(0);
+        }
+        String[] uniqueWords = new HashSet<>(words).toArray(new String[0]);
+        Arrays.sort(uniqueWords);
+        int batchSize = batchSize(uniqueWords.length, executor);
+        List<CompletableFuture<Void>> tasks = new ArrayList<>();
+        for (int start = 0; start < uniqueWords.length; start += batchSize) {
+            int from = start;
+            int to = Math.min(start + batchSize, uniqueWords.length);
+            tasks.add(CompletableFuture.runAsync(() -> {
+                ParseContext context = newParseContext();
+                for (int i = from; i < to; i++) {
+                    String word = uniqueWords[i];
+                    parseIntoCache(word, word.toLowerCase(), context);
+                }
+            }, executor));
+        }
+        return CompletableFuture.allOf(tasks.toArray(new CompletableFuture<?>[0]))
+            .thenApply(v -> uniqueWords.length);
     }
 
     public Grammeme getGrammeme(String value) {
@@ -132,6 +362,10 @@ public class MorphAnalyzer {
         return tagStorage.getAllGrammemes();
     }
 
+    public List<Grammeme> getCategoryGrammemes(Grammeme root) {
+        return tagStorage.getCategoryGrammemes(root);
+    }
+
     public Tag getTag(String tagString) {
         return tagStorage.getTag(tagString);
     }
@@ -141,106 +375,319 @@ public class MorphAnalyzer {
     }
 
     public List<String> normalForms(char[] buffer, int offset, int count) {
-        return normalForms(new String(buffer, offset, count));
+        if (hasCachedResults()) {
+            // Cached results are looked up by strings
+            return normalForms(new String(buffer, offset, count));
+        }
+        return getNormalForms(normalForms(buffer, offset, count, true, contexts.get()));
     }
 
     public List<String> normalForms(String word) {
-        List<ParsedWord> parseds = parse(word);
-        List<String> normalForms = new ArrayList<>();
-        Set<String> uniqueNormalForms = new HashSet<>();
+        return normalForms(word, true);
+    }
 
-        for (ParsedWord p : parseds) {
-            if (!uniqueNormalForms.contains(p.normalForm)) {
-                normalForms.add(p.normalForm);
-                uniqueNormalForms.add(p.normalForm);
+    // Unordered normal forms are found without estimating probabilities and sorting
+    public List<String> normalForms(String word, boolean ordered) {
+        if (ordered && hasCachedResults()) {
+            List<String> normalForms = new ArrayList<>();
+            Set<String> uniqueNormalForms = new HashSet<>();
+            for (ParsedWord p : parse(word)) {
+                if (uniqueNormalForms.add(p.normalForm)) {
+                    normalForms.add(p.normalForm);
+                }
             }
+            return normalForms;
+        }
+        return normalForms(word, ordered, contexts.get());
+    }
+
+    private List<String> normalForms(String word, boolean ordered, ParseContext context) {
+        context.reset(this, word);
+        return getNormalForms(normalForms(context, ordered));
+    }
+
+    private static List<String> getNormalForms(ParseContext context) {
+        List<String> normalForms = new ArrayList<>(context.size());
+        for (int i = 0; i < context.size(); i++) {
+            normalForms.add(context.getNormalForm(i));
         }
+        context.release();
         return normalForms;
     }
 
+    // Leaves a result for every unique normal form in the context.
+    // Scores of the results are not estimated when the order is not needed
+    public ParseContext normalForms(char[] buffer, int offset, int count, boolean ordered, ParseContext context) {
+        context.reset(this, buffer, offset, count);
+        return normalForms(context, ordered);
+    }
+
+    private ParseContext normalForms(ParseContext context, boolean ordered) {
+        if (ordered) {
+            parse(context);
+        } else {
+            collect(context);
+        }
+        context.filterNormalForms();
+        return context;
+    }
+
     public List<Tag> tag(char[] buffer, int offset, int count) {
-        return tag(new String(buffer, offset, count));
+        if (hasCachedResults()) {
+            return tag(new String(buffer, offset, count));
+        }
+        return getTags(parse(buffer, offset, count, contexts.get()));
     }
 
     public List<Tag> tag(String word) {
-        List<ParsedWord> parseds = parse(word);
-        List<Tag> tags = new ArrayList<>(parseds.size());
-        for (ParsedWord p : parseds) {
-            tags.add(p.tag);
+        if (hasCachedResults()) {
+            List<Tag> tags = new ArrayList<>();
+            for (ParsedWord p : parse(word)) {
+                tags.add(p.tag);
+            }
+            return tags;
+        }
+        return getTags(parse(word, contexts.get()));
+    }
+
+    private static List<Tag> getTags(ParseContext context) {
+        List<Tag> tags = new ArrayList<>(context.size());
+        for (int i = 0; i < context.size(); i++) {
+            tags.add(context.getTag(i));
         }
+        context.release();
         return tags;
     }
 
+    public ParsedWord bestParse(char[] buffer, int offset, int count) {
+        if (hasCachedResults()) {
+            return bestParse(new String(buffer, offset, count));
+        }
+        ParseContext context = contexts.get();
+        context.reset(this, buffer, offset, count);
+        return bestParse(context);
+    }
+
+    // The first result of parse, found without sorting all the results
+    public ParsedWord bestParse(String word) {
+        if (hasCachedResults()) {
+            List<ParsedWord> parseds = parse(word);
+            return parseds.isEmpty() ? null : parseds.get(0);
+        }
+        ParseContext context = contexts.get();
+        context.reset(this, word);
+        return bestParse(context);
+    }
+
+    private ParsedWord bestParse(ParseContext context) {
+        collect(context);
+        context.filterDups();
+        context.estimate(prob);
+        int best = context.best();
+        ParsedWord parsed = best >= 0 ? context.getParsedWord(best) : null;
+        context.release();
+        return parsed;
+    }
+
     public List<ParsedWord> parse(char[] buffer, int offset, int count) {
-        return parse(new String(buffer, offset, count));
+        if (hasCachedResults()) {
+            return parse(new String(buffer, offset, count));
+        }
+        return getParsedWords(parse(buffer, offset, count, contexts.get()));
     }
 
     public List<ParsedWord> parse(String word) {
-        String wordLower = word.toLowerCase();
-        if (wordLower.equals("путин") || wordLower.equals("путін")) {
-            wordLower = "хуйло";
+        if (!hasCachedResults()) {
+            return getParsedWords(parse(word, contexts.get()));
         }
-        List<ParsedWord> parseds = new ArrayList<>();
-        for (AnalyzerUnit unit : units) {
-            List<ParsedWord> unitParseds = unit.parse(word, wordLower);
-            if (unitParseds == null) {
-                continue;
+        // Lowercasing must not change the length, as prefixes are counted by the original word
+        String wordLower = word.toLowerCase();
+        if (wordLower.length() == word.length()) {
+            List<ParsedWord> parseds = hotWords != null ? hotWords.get(wordLower) : null;
+            if (parseds == null && cache != null) {
+                parseds = cache.get(wordLower);
             }
-
-            parseds.addAll(unitParseds);
-            if (unit.isTerminated() && !parseds.isEmpty()) {
-                break;
+            if (parseds != null) {
+                return parseds;
             }
         }
+        if (cache == null) {
+            return getParsedWords(parse(word, contexts.get()));
+        }
+        return parseIntoCache(word, wordLower, contexts.get());
+    }
 
-        parseds = filterDups(parseds);
-        parseds = estimate(parseds);
-        parseds.sort(Collections.reverseOrder());
+    private static List<ParsedWord> getParsedWords(ParseContext context) {
+        List<ParsedWord> parseds = context.getParsedWords();
+        context.release();
         return parseds;
     }
 
-    private List<ParsedWord> estimate(List<ParsedWord> parseds) {
-        float[] newScores = new float[parseds.size()];
-        float sumProbs = 0.0f, sumScores = 0.0f;
-        int i = 0;
-        if (prob == null) {
-            return parseds;
+    private boolean hasCachedResults() {
+        return cache != null || hotWords != null;
+    }
+
+    private List<ParsedWord> parseIntoCache(String word, String wordLower, ParseContext context) {
+        parse(word, context);
+        if (wordLower.length() != word.length() || context.dependsOnCase()) {
+            return getParsedWords(context);
         }
-        for (ParsedWord parsed : parseds) {
-            newScores[i] = prob.getProbability(parsed.foundWord, parsed.tag);
-            sumProbs += newScores[i];
-            sumScores += parsed.score;
-            i++;
+        List<ParsedWord> parseds = Collections.unmodifiableList(getParsedWords(context));
+        cache.put(wordLower, parseds);
+        return parseds;
+    }
+
+    // Context for parsing words one after another by a single thread.
+    // Dictionary lookups continue from the common prefix with the previous word
+    public ParseContext newParseContext() {
+        return new ParseContext(this, true);
+    }
+
+    // Parses the word into the context, the results are valid until the next word.
+    // Dictionary words are parsed without allocations
+    public ParseContext parse(char[] buffer, int offset, int count, ParseContext context) {
+        context.reset(this, buffer, offset, count);
+        return parse(context);
+    }
+
+    public ParseContext parse(String word, ParseContext context) {
+        context.reset(this, word);
+        return parse(context);
+    }
+
+    // Parses a batch of words. Dictionary lookups continue from the common prefix
+    // with the previous word, so sorted words are parsed faster than one by one
+    public List<List<ParsedWord>> parseSorted(List<String> words) {
+        ParseContext context = newParseContext();
+        List<List<ParsedWord>> results = new ArrayList<>(words.size());
+        for (String word : words) {
+            results.add(parse(word, context).getParsedWords());
+        }
+        return results;
+    }
+
+    // Parses a batch of words, the results are aligned with the words.
+    // Every unique word is parsed once, so repeated words share their results
+    public List<List<ParsedWord>> parseAll(Collection<String> words) {
+        return parseAll(words, null);
+    }
+
+    // Unique words are split into batches which are parsed by the executor,
+    // for example a ForkJoinPool
+    public List<List<ParsedWord>> parseAll(Collection<String> words, Executor executor) {
+        return processAll(words, executor, (word, context) -> parse(word, context).getParsedWords());
+    }
+
+    public List<List<String>> normalFormsAll(Collection<String> words) {
+        return normalFormsAll(words, null);
+    }
+
+    public List<List<String>> normalFormsAll(Collection<String> words, Executor executor) {
+        return processAll(words, executor, (word, context) -> normalForms(word, true, context));
+    }
+
+    private <T> List<T> processAll(Collection<String> words,
+                                   Executor executor,
+                                   BiFunction<String,ParseContext,T> process) {
+        Map<String,Integer> uniqueIndexes = new HashMap<>();
+        int[] indexes = new int[words.size()];
+        int n = 0;
+        for (String word : words) {
+            Integer index = uniqueIndexes.putIfAbsent(word, uniqueIndexes.size());
+            indexes[n++] = index != null ? index : uniqueIndexes.size() - 1;
         }
-        if (sumProbs < ParsedWord.EPS) {
-            float k = 1.0f / sumScores;
-            i = 0;
-            for (ParsedWord parsed : parseds) {
-                newScores[i] = parsed.score * k;
-                i++;
+        // Sorted words share prefixes, so dictionary lookups continue
+        // from the previous word
+        String[] uniqueWords = uniqueIndexes.keySet().toArray(new String[0]);
+        Arrays.sort(uniqueWords);
+        Object[] results = new Object[uniqueWords.length];
+
+        int batchSize = batchSize(uniqueWords.length, executor);
+        List<CompletableFuture<Void>> tasks = new ArrayList<>();
+        for (int start = 0; start < uniqueWords.length; start += batchSize) {
+            int from = start;
+            int to = Math.min(start + batchSize, uniqueWords.length);
+            Runnable task = () -> {
+                ParseContext context = newParseContext();
+                for (int i = from; i < to; i++) {
+                    String word = uniqueWords[i];
+                    results[uniqueIndexes.get(word)] = process.apply(word, context);
+                }
+            };
+            if (executor == null) {
+                task.run();
+            } else {
+                tasks.add(CompletableFuture.runAsync(task, executor));
+            }
+        }
+        try {
+            CompletableFuture.allOf(tasks.toArray(new CompletableFuture<?>[0])).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
             }
+            throw e;
+        }
+
+        List<T> aligned = new ArrayList<>(indexes.length);
+        for (int index : indexes) {
+            @SuppressWarnings("unchecked")
+            T result = (T) results[index];
+            aligned.add(result);
         }
+        return aligned;
+    }
 
-        List<ParsedWord> estimatedParseds = new ArrayList<ParsedWord>(parseds.size());
-        i = 0;
-        for (ParsedWord parsed : parseds) {
-            estimatedParseds.add(parsed.rescore(newScores[i]));
-            i++;
+    // A few batches for every thread of the executor, so the threads stay busy
+    // when some batches take longer than others
+    private static int batchSize(int numWords, Executor executor) {
+        if (executor == null) {
+            return numWords;
         }
+        int numBatches = parallelism(executor) * 4;
+        return Math.max(MIN_BATCH_SIZE, (numWords + numBatches - 1) / numBatches);
+    }
 
-        return estimatedParseds;
+    private static int parallelism(Executor executor) {
+        if (executor instanceof ForkJoinPool) {
+            return ((ForkJoinPool) executor).getParallelism();
+        }
+        int numProcessors = Runtime.getRuntime().availableProcessors();
+        if (executor instanceof ThreadPoolExecutor) {
+            // Cached pools have no upper bound, their threads are limited by the processors
+            ThreadPoolExecutor pool = (ThreadPoolExecutor) executor;
+            return Math.min(pool.getMaximumPoolSize(), Math.max(pool.getCorePoolSize(), numProcessors));
+        }
+        return numProcessors;
     }
 
-    private List<ParsedWord> filterDups(List<ParsedWord> parseds) {
-        Set<ParsedWord.Unique> seenParseds = new HashSet<>();
-        List<ParsedWord> filteredParseds = new ArrayList<>();
-        for (ParsedWord p : parseds) {
-            ParsedWord.Unique u = p.toUnique();
-            if (!seenParseds.contains(u)) {
-                filteredParseds.add(p);
-                seenParseds.add(u);
+    private ParseContext parse(ParseContext context) {
+        collect(context);
+        context.filterDups();
+        context.estimate(prob);
+        context.sort();
+        return context;
+    }
+
+    private void collect(ParseContext context) {
+        if (context.wordLowerEquals("путин") || context.wordLowerEquals("путін")) {
+            context.setWordLower("хуйло");
+        }
+        for (AnalyzerUnit unit : units) {
+            if (!unit.accepts(context.getCharClasses())) {
+                continue;
+            }
+            int size = context.size();
+            if (!unit.parse(context)) {
+                continue;
+            }
+            // Units which added nothing do not prevent caching of the results
+            if (context.size() > size && unit.dependsOnCase()) {
+                context.setDependsOnCase();
+            }
+            if (unit.isTerminated() && context.size() > 0) {
+                break;
             }
         }
-        return filteredParseds;
     }
 }
@@ -0,0 +1,243 @@
+package company.evo.jmorphy2;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+import company.evo.jmorphy2.units.ParsedWordCodec;
+
+
+// Cache which keeps parse results outside of the Java heap, in direct memory or in a mapped file,
+// so millions of words can be cached without growing the heap.
+// Results are written by ParsedWordCodec and parsed words are restored on every hit.
+// The memory is split into stripes with their own locks. A stripe is an open addressing table
+// of fixed size slots, a word can only be in PROBE_LENGTH slots after its home slot.
+// When all of them are used one of them is evicted by the clock algorithm:
+// every hit marks a slot as referenced, the clock hand skips and clears referenced slots.
+// Results that do not fit a slot are not cached and are counted as rejected
+public class OffHeapParseCache implements ParseCache {
+    public static final int SLOT_SIZE = 256;
+    private static final int PROBE_LENGTH = 8;
+    private static final int MAX_STRIPES = 16;
+    private static final int MIN_STRIPE_SLOTS = 1024;
+    // A stripe must fit a ByteBuffer
+    private static final int MAX_STRIPE_SLOTS = 1 << 22;
+
+    // hash, state, referenced, then the key and the results written by the codec
+    private static final int HASH_OFFSET = 0;
+    private static final int STATE_OFFSET = 4;
+    private static final int REFERENCED_OFFSET = 5;
+    private static final int KEY_OFFSET = 6;
+
+    private static final byte EMPTY = 0;
+    private static final byte USED = 1;
+
+    private final ParsedWordCodec codec;
+    private final Stripe[] stripes;
+    private final int stripeMask;
+    private final int slotMask;
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+    private final LongAdder rejectionCount = new LongAdder();
+
+    // Allocates direct memory
+    public OffHeapParseCache(ParsedWordCodec codec, long maxBytes) {
+        this(codec, maxBytes, null);
+    }
+
+    // Maps the file into memory, the file is truncated
+    public OffHeapParseCache(ParsedWordCodec codec, long maxBytes, Path file) {
+        this.codec = codec;
+        long maxSlots = maxBytes / SLOT_SIZE;
+        if (maxSlots < PROBE_LENGTH) {
+            throw new IllegalArgumentException(
+                String.format("Cache size must be at least %d bytes: %d", PROBE_LENGTH * SLOT_SIZE, maxBytes)
+            );
+        }
+        int numStripes = 1;
+        while (numStripes < MAX_STRIPES && maxSlots / (numStripes * 2) >= MIN_STRIPE_SLOTS) {
+            numStripes *= 2;
+        }
+        int stripeSlots = (int) Math.min(MAX_STRIPE_SLOTS, Long.highestOneBit(maxSlots / numStripes));
+        stripes = new Stripe[numStripes];
+        stripeMask = numStripes - 1;
+        slotMask = stripeSlots - 1;
+        try {
+            FileChannel channel = null;
+            if (file != null) {
+                channel = FileChannel.open(
+                    file,
+                    StandardOpenOption.CREATE,
+                    StandardOpenOption.READ,
+                    StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING
+                );
+            }
+            long stripeSize = (long) stripeSlots * SLOT_SIZE;
+            for (int i = 0; i < numStripes; i++) {
+                ByteBuffer buffer;
+                if (channel != null) {
+                    buffer = channel.map(FileChannel.MapMode.READ_WRITE, i * stripeSize, stripeSize);
+                } else {
+                    buffer = ByteBuffer.allocateDirect((int) stripeSize);
+                }
+                stripes[i] = new Stripe(buffer);
+            }
+            // Mappings stay valid after the channel is closed
+            if (channel != null) {
+                channel.close();
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot map cache file: " + file, e);
+        }
+    }
+
+    @Override
+    public List<ParsedWord> get(String wordLower) {
+        int hash = hash(wordLower);
+        Stripe stripe = stripes[(hash >>> 24) & stripeMask];
+        List<ParsedWord> parsedWords = null;
+        synchronized (stripe) {
+            int slot = stripe.find(hash, wordLower, slotMask);
+            if (slot >= 0) {
+                ByteBuffer buffer = stripe.buffer;
+                int offset = slot * SLOT_SIZE;
+                buffer.put(offset + REFERENCED_OFFSET, (byte) 1);
+                parsedWords = codec.read(
+                    wordLower, buffer, offset + KEY_OFFSET + ParsedWordCodec.stringLength(wordLower)
+                );
+            }
+        }
+        if (parsedWords != null) {
+            hitCount.increment();
+        } else {
+            missCount.increment();
+        }
+        return parsedWords;
+    }
+
+    @Override
+    public void put(String wordLower, List<ParsedWord> parsedWords) {
+        int keyLength = ParsedWordCodec.stringLength(wordLower);
+        int length = codec.encodedLength(wordLower, parsedWords);
+        if (keyLength < 0 || length < 0 || KEY_OFFSET + keyLength + length > SLOT_SIZE) {
+            rejectionCount.increment();
+            return;
+        }
+        int hash = hash(wordLower);
+        Stripe stripe = stripes[(hash >>> 24) & stripeMask];
+        boolean evicted = false;
+        synchronized (stripe) {
+            ByteBuffer buffer = stripe.buffer;
+            int slot = stripe.find(hash, wordLower, slotMask);
+            if (slot < 0) {
+                slot = stripe.findEmpty(hash, slotMask);
+            }
+            if (slot < 0) {
+                slot = stripe.evict(hash, slotMask);
+                evicted = true;
+            }
+            int offset = slot * SLOT_SIZE;
+            buffer.putInt(offset + HASH_OFFSET, hash);
+            buffer.put(offset + STATE_OFFSET, USED);
+            buffer.put(offset + REFERENCED_OFFSET, (byte) 0);
+            int resultsOffset = ParsedWordCodec.writeString(wordLower, buffer, offset + KEY_OFFSET);
+            codec.write(wordLower, parsedWords, buffer, resultsOffset);
+        }
+        if (evicted) {
+            evictionCount.increment();
+        }
+    }
+
+    @Override
+    public Stats getStats() {
+        return new Stats(hitCount.sum(), missCount.sum(), evictionCount.sum(), rejectionCount.sum());
+    }
+
+    // Words which were requested since the clock hand passed them go first
+    @Override
+    public List<String> hotWords(int limit) {
+        List<String> referencedWords = new ArrayList<>();
+        List<String> otherWords = new ArrayList<>();
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                ByteBuffer buffer = stripe.buffer;
+                for (int slot = 0; slot <= slotMask && referencedWords.size() < limit; slot++) {
+                    int offset = slot * SLOT_SIZE;
+                    if (buffer.get(offset + STATE_OFFSET) != USED) {
+                        continue;
+                    }
+                    if (buffer.get(offset + REFERENCED_OFFSET) != 0) {
+                        referencedWords.add(stripe.key(offset));
+                    } else if (otherWords.size() < limit) {
+                        otherWords.add(stripe.key(offset));
+                    }
+                }
+            }
+        }
+        for (int i = 0; referencedWords.size() < limit && i < otherWords.size(); i++) {
+            referencedWords.add(otherWords.get(i));
+        }
+        return referencedWords;
+    }
+
+    private static int hash(String word) {
+        int h = word.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static class Stripe {
+        final ByteBuffer buffer;
+        // Position of the clock hand in a probe sequence
+        int hand;
+
+        Stripe(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        int find(int hash, String key, int slotMask) {
+            for (int i = 0; i < PROBE_LENGTH; i++) {
+                int slot = (hash + i) & slotMask;
+                int offset = slot * SLOT_SIZE;
+                if (buffer.get(offset + STATE_OFFSET) == USED
+                    && buffer.getInt(offset + HASH_OFFSET) == hash
+                    && ParsedWordCodec.stringEquals(buffer, offset + KEY_OFFSET, key)) {
+                    return slot;
+                }
+            }
+            return -1;
+        }
+
+        int findEmpty(int hash, int slotMask) {
+            for (int i = 0; i < PROBE_LENGTH; i++) {
+                int slot = (hash + i) & slotMask;
+                if (buffer.get(slot * SLOT_SIZE + STATE_OFFSET) == EMPTY) {
+                    return slot;
+                }
+            }
+            return -1;
+        }
+
+        int evict(int hash, int slotMask) {
+            while (true) {
+                int slot = (hash + hand) & slotMask;
+                hand = (hand + 1) % PROBE_LENGTH;
+                int offset = slot * SLOT_SIZE + REFERENCED_OFFSET;
+                if (buffer.get(offset) == 0) {
+                    return slot;
+                }
+                buffer.put(offset, (byte) 0);
+            }
+        }
+
+        String key(int offset) {
+            return ParsedWordCodec.readString(buffer, offset + KEY_OFFSET);
+        }
+    }
+}
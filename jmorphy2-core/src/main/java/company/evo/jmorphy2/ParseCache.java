@@ -0,0 +1,56 @@
+package company.evo.jmorphy2;
+
+import java.util.Collections;
+import java.util.List;
+
+
+// Cache of the parse results by lowercased words, see MorphAnalyzer.Builder.cache.
+// Only results that do not depend on the case of the word are put into the cache.
+// Implementations must be safe to use from several threads
+public interface ParseCache {
+    // Returns null when there are no results for the word
+    List<ParsedWord> get(String wordLower);
+
+    // The results must not be modified
+    void put(String wordLower, List<ParsedWord> parsedWords);
+
+    Stats getStats();
+
+    // At most limit cached words, the most frequent first, see CacheSnapshot.
+    // Caches which cannot tell their hottest words return an empty list
+    default List<String> hotWords(int limit) {
+        return Collections.emptyList();
+    }
+
+    class Stats {
+        public final long hitCount;
+        public final long missCount;
+        public final long evictionCount;
+        // Results which were not cached because the cache cannot keep them
+        public final long rejectionCount;
+
+        public Stats(long hitCount, long missCount, long evictionCount) {
+            this(hitCount, missCount, evictionCount, 0);
+        }
+
+        public Stats(long hitCount, long missCount, long evictionCount, long rejectionCount) {
+            this.hitCount = hitCount;
+            this.missCount = missCount;
+            this.evictionCount = evictionCount;
+            this.rejectionCount = rejectionCount;
+        }
+
+        public double hitRate() {
+            long requestCount = hitCount + missCount;
+            return requestCount == 0 ? 1.0 : (double) hitCount / requestCount;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(
+                "hits: %d, misses: %d, evictions: %d, rejections: %d",
+                hitCount, missCount, evictionCount, rejectionCount
+            );
+        }
+    }
+}
@@ -0,0 +1,655 @@
+package company.evo.jmorphy2;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Supplier;
+
+import company.evo.jmorphy2.units.AnalyzerUnit;
+
+
+// Reusable state of MorphAnalyzer.parse. Candidates are kept in primitive buffers
+// and the context itself is a view of the results, so parsing a dictionary word
+// with a reused context allocates nothing.
+// Dictionary candidates are packed as paradigm id, form index, prefix length and score,
+// their normal forms and ParsedWord are built only when requested.
+// The results are valid until the context is used for the next word.
+// A context must not be used from several threads at once
+public final class ParseContext {
+    // Contexts of an analyzer are kept by its thread local, see MorphAnalyzer,
+    // so they must not keep the analyzer alive. Units and dictionaries of the results
+    // are dropped by release, units with a state are referenced weakly
+    private final WeakReference<MorphAnalyzer> morph;
+    // Transitions of the previous word are reused when batches are enabled
+    private final boolean batched;
+    private AnalyzerUnit[] batchUnits = new AnalyzerUnit[0];
+    private WordsDAWG.Batch[] batches = new WordsDAWG.Batch[0];
+    private final WordFormConsumer wordFormConsumer = new WordFormConsumer();
+    private final FuzzyWordFormConsumer fuzzyWordFormConsumer = new FuzzyWordFormConsumer();
+    private final Chars wordLowerChars = new Chars();
+    // Buffers of the units kept between words, see getUnitState
+    private UnitState[] unitStates = new UnitState[0];
+
+    private char[] word = new char[16];
+    private int wordLength;
+    private String wordString;
+    // Calculated on the first access, -1 until then
+    private int charClasses;
+    private char[] wordLower = new char[16];
+    private int wordLowerLength;
+    private String wordLowerString;
+    // Some of the units which parsed the word depend on its case
+    private boolean dependsOnCase;
+
+    // Found words and normal forms of all the candidates,
+    // a normal form is built on the first access
+    private char[] chars = new char[256];
+    private int charsSize;
+
+    private int size;
+    private int[] order = new int[16];
+    private Tag[] tags = new Tag[16];
+    private float[] scores = new float[16];
+    private float[] probs = new float[16];
+    private int[] foundWordOffsets = new int[16];
+    private int[] foundWordLengths = new int[16];
+    private int[] normalFormOffsets = new int[16];
+    private int[] normalFormLengths = new int[16];
+    private int[] normalFormHashes = new int[16];
+    // Unit which builds ParsedWord of a word form, see AnalyzerUnit.newParsedWord
+    private AnalyzerUnit[] units = new AnalyzerUnit[16];
+    private Dictionary[] dicts = new Dictionary[16];
+    private int[] prefixLengths = new int[16];
+    private short[] paradigmIds = new short[16];
+    private short[] idxs = new short[16];
+    // Candidates of other units
+    private ParsedWord[] parseds = new ParsedWord[16];
+    // Open addressing set of candidates with unique normal forms
+    private int[] normalFormsSet = new int[16];
+
+    ParseContext(MorphAnalyzer morph, boolean batched) {
+        this.morph = new WeakReference<>(morph);
+        this.batched = batched;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public Tag getTag(int i) {
+        return tags[order[i]];
+    }
+
+    public float getScore(int i) {
+        return scores[order[i]];
+    }
+
+    // Normal forms are stored in a shared buffer which grows when they are built,
+    // so get the buffer after the offset of the normal form
+    public char[] getBuffer() {
+        return chars;
+    }
+
+    public int getNormalFormOffset(int i) {
+        int c = order[i];
+        buildNormalForm(c);
+        return normalFormOffsets[c];
+    }
+
+    public int getNormalFormLength(int i) {
+        int c = order[i];
+        buildNormalForm(c);
+        return normalFormLengths[c];
+    }
+
+    public String getNormalForm(int i) {
+        int c = order[i];
+        if (parseds[c] != null) {
+            return parseds[c].normalForm;
+        }
+        buildNormalForm(c);
+        return new String(chars, normalFormOffsets[c], normalFormLengths[c]);
+    }
+
+    public boolean normalFormEquals(int i, int j) {
+        return normalFormEqualsAt(order[i], order[j]);
+    }
+
+    public ParsedWord getParsedWord(int i) {
+        int c = order[i];
+        if (parseds[c] != null) {
+            ParsedWord parsed = parseds[c];
+            return parsed.score == scores[c] ? parsed : parsed.rescore(scores[c]);
+        }
+        String foundWord = new String(chars, foundWordOffsets[c], foundWordLengths[c]);
+        return units[c].newParsedWord(getWordLower(), tags[c], getNormalForm(i), foundWord,
+                                      paradigmIds[c], idxs[c], prefixLengths[c], scores[c]);
+    }
+
+    public List<ParsedWord> getParsedWords() {
+        List<ParsedWord> parsedWords = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            parsedWords.add(getParsedWord(i));
+        }
+        return parsedWords;
+    }
+
+    // Following methods are for the units adding their results into the context
+
+    public String getWord() {
+        if (wordString == null) {
+            wordString = new String(word, 0, wordLength);
+        }
+        return wordString;
+    }
+
+    public int getWordLength() {
+        return wordLength;
+    }
+
+    // See CharClasses
+    public int getCharClasses() {
+        if (charClasses < 0) {
+            charClasses = CharClasses.of(word, 0, wordLength);
+        }
+        return charClasses;
+    }
+
+    public String getWordLower() {
+        if (wordLowerString == null) {
+            wordLowerString = new String(wordLower, 0, wordLowerLength);
+        }
+        return wordLowerString;
+    }
+
+    // Lowercased word without a prefix, the view is reused by every call
+    public CharSequence getWordLowerChars(int start) {
+        wordLowerChars.start = start;
+        return wordLowerChars;
+    }
+
+    // Collects word forms of the dictionary found by the unit into the context,
+    // their results are built by the unit. Word forms found for the rest
+    // of the word after a prefix must be productive
+    public WordsDAWG.RawWordFormConsumer wordFormConsumer(AnalyzerUnit unit,
+                                                         Dictionary dict,
+                                                         int prefixLength,
+                                                         float score) {
+        wordFormConsumer.unit = unit;
+        wordFormConsumer.dict = dict;
+        wordFormConsumer.prefixLength = prefixLength;
+        wordFormConsumer.score = score;
+        return wordFormConsumer;
+    }
+
+    // Collects fuzzy found word forms, the score is divided by the distance plus one
+    public WordsDAWG.RawFuzzyWordFormConsumer fuzzyWordFormConsumer(AnalyzerUnit unit,
+                                                                   Dictionary dict,
+                                                                   float score) {
+        wordFormConsumer(unit, dict, 0, score);
+        fuzzyWordFormConsumer.score = score;
+        return fuzzyWordFormConsumer;
+    }
+
+    public WordsDAWG.Batch getBatch(AnalyzerUnit unit, WordsDAWG words) {
+        if (!batched) {
+            return null;
+        }
+        for (int i = 0; i < batchUnits.length; i++) {
+            if (batchUnits[i] == unit) {
+                return batches[i];
+            }
+        }
+        int n = batchUnits.length;
+        batchUnits = Arrays.copyOf(batchUnits, n + 1);
+        batches = Arrays.copyOf(batches, n + 1);
+        batchUnits[n] = unit;
+        batches[n] = words.newBatch();
+        return batches[n];
+    }
+
+    // State of the unit which is reused by the next words parsed with the context,
+    // created by the supplier on the first call. The state must not keep references
+    // to the dictionaries of the unit after the word is parsed
+    public Object getUnitState(AnalyzerUnit unit, Supplier<Object> newState) {
+        int free = -1;
+        for (int i = 0; i < unitStates.length; i++) {
+            AnalyzerUnit stateUnit = unitStates[i].unit.get();
+            if (stateUnit == unit) {
+                return unitStates[i].state;
+            }
+            if (stateUnit == null) {
+                free = i;
+            }
+        }
+        if (free < 0) {
+            free = unitStates.length;
+            unitStates = Arrays.copyOf(unitStates, free + 1);
+        }
+        unitStates[free] = new UnitState(unit, newState.get());
+        return unitStates[free].state;
+    }
+
+    public void addAll(List<ParsedWord> parsedWords) {
+        for (ParsedWord parsed : parsedWords) {
+            int c = newCandidate(parsed.tag, parsed.score);
+            parseds[c] = parsed;
+            units[c] = null;
+            dicts[c] = null;
+
+            int foundWordLength = parsed.foundWord.length();
+            ensureChars(foundWordLength);
+            foundWordOffsets[c] = charsSize;
+            foundWordLengths[c] = foundWordLength;
+            parsed.foundWord.getChars(0, foundWordLength, chars, charsSize);
+            charsSize += foundWordLength;
+        }
+    }
+
+    void reset(MorphAnalyzer morph, char[] buffer, int offset, int count) {
+        if (morph != this.morph.get()) {
+            throw new IllegalArgumentException("Context belongs to another analyzer");
+        }
+        if (word.length < count) {
+            word = new char[count];
+        }
+        if (wordLower.length < count) {
+            wordLower = new char[count];
+        }
+        System.arraycopy(buffer, offset, word, 0, count);
+        wordLength = count;
+        wordString = null;
+        charClasses = -1;
+        dependsOnCase = false;
+        if (!lowerCase()) {
+            setWordLower(getWord().toLowerCase());
+        }
+        size = 0;
+        charsSize = 0;
+    }
+
+    void reset(MorphAnalyzer morph, String word) {
+        int count = word.length();
+        if (this.word.length < count) {
+            this.word = new char[count];
+        }
+        word.getChars(0, count, this.word, 0);
+        reset(morph, this.word, 0, count);
+        wordString = word;
+    }
+
+    // Lowercases the word the same way as String.toLowerCase does,
+    // returns false when the word needs the locale specific rules
+    private boolean lowerCase() {
+        String language = Locale.getDefault().getLanguage();
+        if (language.equals("tr") || language.equals("az") || language.equals("lt")) {
+            return false;
+        }
+        for (int i = 0; i < wordLength; i++) {
+            char c = word[i];
+            if (c == '\u03A3' || c == '\u0130' || Character.isSurrogate(c)) {
+                return false;
+            }
+            wordLower[i] = Character.toLowerCase(c);
+        }
+        wordLowerLength = wordLength;
+        wordLowerString = null;
+        return true;
+    }
+
+    // Drops the results and their references to the units and dictionaries,
+    // called when the results are copied out of a context kept by a thread
+    void release() {
+        Arrays.fill(tags, null);
+        Arrays.fill(units, null);
+        Arrays.fill(dicts, null);
+        Arrays.fill(parseds, null);
+        wordFormConsumer.unit = null;
+        wordFormConsumer.dict = null;
+        size = 0;
+        charsSize = 0;
+    }
+
+    boolean dependsOnCase() {
+        return dependsOnCase;
+    }
+
+    void setDependsOnCase() {
+        dependsOnCase = true;
+    }
+
+    boolean wordLowerEquals(String s) {
+        if (s.length() != wordLowerLength) {
+            return false;
+        }
+        for (int i = 0; i < wordLowerLength; i++) {
+            if (s.charAt(i) != wordLower[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    void setWordLower(String s) {
+        int length = s.length();
+        if (wordLower.length < length) {
+            wordLower = new char[length];
+        }
+        s.getChars(0, length, wordLower, 0);
+        wordLowerLength = length;
+        wordLowerString = s;
+    }
+
+    private int newCandidate(Tag tag, float score) {
+        if (size == tags.length) {
+            int newLength = size * 2;
+            order = Arrays.copyOf(order, newLength);
+            tags = Arrays.copyOf(tags, newLength);
+            scores = Arrays.copyOf(scores, newLength);
+            probs = Arrays.copyOf(probs, newLength);
+            foundWordOffsets = Arrays.copyOf(foundWordOffsets, newLength);
+            foundWordLengths = Arrays.copyOf(foundWordLengths, newLength);
+            normalFormOffsets = Arrays.copyOf(normalFormOffsets, newLength);
+            normalFormLengths = Arrays.copyOf(normalFormLengths, newLength);
+            normalFormHashes = Arrays.copyOf(normalFormHashes, newLength);
+            units = Arrays.copyOf(units, newLength);
+            dicts = Arrays.copyOf(dicts, newLength);
+            prefixLengths = Arrays.copyOf(prefixLengths, newLength);
+            paradigmIds = Arrays.copyOf(paradigmIds, newLength);
+            idxs = Arrays.copyOf(idxs, newLength);
+            parseds = Arrays.copyOf(parseds, newLength);
+        }
+        tags[size] = tag;
+        scores[size] = score;
+        order[size] = size;
+        normalFormOffsets[size] = -1;
+        return size++;
+    }
+
+    private void buildNormalForm(int c) {
+        if (normalFormOffsets[c] >= 0) {
+            return;
+        }
+        int offset = charsSize;
+        int length;
+        if (parseds[c] != null) {
+            String normalForm = parseds[c].normalForm;
+            length = normalForm.length();
+            ensureChars(length);
+            normalForm.getChars(0, length, chars, offset);
+        } else {
+            short paradigmId = paradigmIds[c];
+            short idx = idxs[c];
+            Dictionary dict = dicts[c];
+            int prefixLength = prefixLengths[c];
+            int foundWordLength = foundWordLengths[c];
+            length = prefixLength + dict.normalFormLength(paradigmId, idx, foundWordLength);
+            ensureChars(length);
+            System.arraycopy(wordLower, 0, chars, offset, prefixLength);
+            dict.buildNormalForm(paradigmId, idx, chars, foundWordOffsets[c], foundWordLength,
+                                 chars, offset + prefixLength);
+        }
+        charsSize += length;
+        normalFormOffsets[c] = offset;
+        normalFormLengths[c] = length;
+        normalFormHashes[c] = hash(offset, length);
+    }
+
+    private void ensureChars(int length) {
+        if (chars.length - charsSize < length) {
+            chars = Arrays.copyOf(chars, Math.max(chars.length * 2, charsSize + length));
+        }
+    }
+
+    private int hash(int offset, int length) {
+        int h = 0;
+        for (int i = offset; i < offset + length; i++) {
+            h = 31 * h + chars[i];
+        }
+        return h;
+    }
+
+    private boolean normalFormEqualsAt(int a, int b) {
+        if (normalFormOffsets[a] >= 0 && normalFormOffsets[b] >= 0) {
+            return normalFormHashes[a] == normalFormHashes[b]
+                && rangeEquals(normalFormOffsets[a], normalFormLengths[a], normalFormOffsets[b], normalFormLengths[b]);
+        }
+        // Compare in place, so the normal forms are not built for tags only
+        int length = normalFormLengthAt(a);
+        if (length != normalFormLengthAt(b)) {
+            return false;
+        }
+        for (int k = 0; k < length; k++) {
+            if (normalFormCharAt(a, k) != normalFormCharAt(b, k)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int normalFormLengthAt(int c) {
+        if (normalFormOffsets[c] >= 0) {
+            return normalFormLengths[c];
+        }
+        if (parseds[c] != null) {
+            return parseds[c].normalForm.length();
+        }
+        return prefixLengths[c] +
+            dicts[c].normalFormLength(paradigmIds[c], idxs[c], foundWordLengths[c]);
+    }
+
+    private char normalFormCharAt(int c, int k) {
+        if (normalFormOffsets[c] >= 0) {
+            return chars[normalFormOffsets[c] + k];
+        }
+        if (parseds[c] != null) {
+            return parseds[c].normalForm.charAt(k);
+        }
+        int prefixLength = prefixLengths[c];
+        if (k < prefixLength) {
+            return wordLower[k];
+        }
+        return dicts[c].normalFormCharAt(paradigmIds[c], idxs[c],
+                                         chars, foundWordOffsets[c], foundWordLengths[c],
+                                         k - prefixLength);
+    }
+
+    private boolean rangeEquals(int aOffset, int aLength, int bOffset, int bLength) {
+        return Arrays.equals(chars, aOffset, aOffset + aLength, chars, bOffset, bOffset + bLength);
+    }
+
+    // Keeps the first of the candidates with the same tag and normal form,
+    // normal forms are only built for the candidates with the same tags
+    void filterDups() {
+        int newSize = 0;
+        for (int c = 0; c < size; c++) {
+            boolean dup = false;
+            for (int k = 0; k < newSize; k++) {
+                if ((tags[k] == tags[c] || tags[k].equals(tags[c])) && normalFormEqualsAt(k, c)) {
+                    dup = true;
+                    break;
+                }
+            }
+            if (!dup) {
+                move(c, newSize++);
+            }
+        }
+        size = newSize;
+    }
+
+    // Keeps the first of the results with the same normal form
+    void filterNormalForms() {
+        int capacity = 16;
+        while (capacity < size * 2) {
+            capacity <<= 1;
+        }
+        if (normalFormsSet.length < capacity) {
+            normalFormsSet = new int[capacity];
+        } else {
+            Arrays.fill(normalFormsSet, 0, capacity, 0);
+        }
+        int mask = capacity - 1;
+        int newSize = 0;
+        for (int i = 0; i < size; i++) {
+            int c = order[i];
+            buildNormalForm(c);
+            int h = normalFormHashes[c];
+            int slot = (h ^ (h >>> 16)) & mask;
+            boolean dup = false;
+            while (normalFormsSet[slot] != 0) {
+                if (normalFormEqualsAt(normalFormsSet[slot] - 1, c)) {
+                    dup = true;
+                    break;
+                }
+                slot = (slot + 1) & mask;
+            }
+            if (!dup) {
+                normalFormsSet[slot] = c + 1;
+                order[newSize++] = c;
+            }
+        }
+        size = newSize;
+    }
+
+    // Index of the result with the highest score, the first one of the equal
+    int best() {
+        int best = -1;
+        for (int i = 0; i < size; i++) {
+            if (best < 0 || scores[order[i]] > scores[order[best]]) {
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    private void move(int from, int to) {
+        if (from == to) {
+            return;
+        }
+        tags[to] = tags[from];
+        scores[to] = scores[from];
+        foundWordOffsets[to] = foundWordOffsets[from];
+        foundWordLengths[to] = foundWordLengths[from];
+        normalFormOffsets[to] = normalFormOffsets[from];
+        normalFormLengths[to] = normalFormLengths[from];
+        normalFormHashes[to] = normalFormHashes[from];
+        units[to] = units[from];
+        dicts[to] = dicts[from];
+        prefixLengths[to] = prefixLengths[from];
+        paradigmIds[to] = paradigmIds[from];
+        idxs[to] = idxs[from];
+        parseds[to] = parseds[from];
+    }
+
+    void estimate(ProbabilityEstimator prob) {
+        if (prob == null) {
+            return;
+        }
+        float sumProbs = 0.0f, sumScores = 0.0f;
+        int wordIndex = 0;
+        for (int c = 0; c < size; c++) {
+            // Candidates of the same word usually go one after another
+            if (c == 0 || !rangeEquals(foundWordOffsets[c], foundWordLengths[c],
+                                       foundWordOffsets[c - 1], foundWordLengths[c - 1])) {
+                wordIndex = prob.wordIndex(chars, foundWordOffsets[c], foundWordLengths[c]);
+            }
+            probs[c] = prob.getProbability(wordIndex, tags[c]);
+            sumProbs += probs[c];
+            sumScores += scores[c];
+        }
+        if (sumProbs < ParsedWord.EPS) {
+            float k = 1.0f / sumScores;
+            for (int c = 0; c < size; c++) {
+                probs[c] = scores[c] * k;
+            }
+        }
+        System.arraycopy(probs, 0, scores, 0, size);
+    }
+
+    // Stable sort by descending score, there are only a few candidates
+    void sort() {
+        for (int i = 1; i < size; i++) {
+            int c = order[i];
+            int j = i;
+            while (j > 0 && Float.compare(scores[order[j - 1]], scores[c]) < 0) {
+                order[j] = order[j - 1];
+                j--;
+            }
+            order[j] = c;
+        }
+    }
+
+    private class WordFormConsumer extends WordsDAWG.RawWordFormConsumer {
+        private AnalyzerUnit unit;
+        private Dictionary dict;
+        private int prefixLength;
+        private float score;
+
+        @Override
+        public void accept(char[] foundWord, int foundWordLength, short paradigmId, short idx) {
+            Tag tag = dict.buildTag(paradigmId, idx);
+            if (prefixLength > 0 && !tag.isProductive()) {
+                return;
+            }
+            int c = newCandidate(tag, score);
+            parseds[c] = null;
+            units[c] = unit;
+            dicts[c] = dict;
+            prefixLengths[c] = prefixLength;
+            paradigmIds[c] = paradigmId;
+            idxs[c] = idx;
+
+            ensureChars(foundWordLength);
+            foundWordOffsets[c] = charsSize;
+            foundWordLengths[c] = foundWordLength;
+            System.arraycopy(foundWord, 0, chars, charsSize, foundWordLength);
+            charsSize += foundWordLength;
+        }
+    }
+
+    private class FuzzyWordFormConsumer extends WordsDAWG.RawFuzzyWordFormConsumer {
+        private float score;
+
+        @Override
+        public void accept(char[] foundWord, int foundWordLength, int distance, short paradigmId, short idx) {
+            wordFormConsumer.score = score / (distance + 1);
+            wordFormConsumer.accept(foundWord, foundWordLength, paradigmId, idx);
+        }
+    }
+
+    private static class UnitState {
+        private final WeakReference<AnalyzerUnit> unit;
+        private final Object state;
+
+        UnitState(AnalyzerUnit unit, Object state) {
+            this.unit = new WeakReference<>(unit);
+            this.state = state;
+        }
+    }
+
+    private class Chars implements CharSequence {
+        private int start;
+
+        @Override
+        public int length() {
+            return wordLowerLength - start;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return wordLower[start + index];
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new String(wordLower, this.start + start, end - start);
+        }
+
+        @Override
+        public String toString() {
+            return new String(wordLower, start, wordLowerLength - start);
+        }
+    }
+}
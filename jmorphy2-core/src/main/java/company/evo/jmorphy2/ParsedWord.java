@@ -33,9 +33,20 @@ public abstract class ParsedWord implements Comparable<ParsedWord> {
 
     public List<ParsedWord> inflect(Collection<Grammeme> requiredGrammemes,
             Collection<Grammeme> excludeGrammemes) {
+        // Masks are built by the storage of the tag, as ordinals of other storages
+        // are different grammemes. The lexeme never contains grammemes of another storage
+        // and unknown ones (null), so they match nothing when required and are ignored when excluded
+        Tag.Storage storage = tag.getStorage();
+        for (Grammeme grammeme : requiredGrammemes) {
+            if (grammeme == null || grammeme.storage != storage) {
+                return new ArrayList<>();
+            }
+        }
+        long[] requiredMask = storage.grammemesMask(requiredGrammemes);
+        long[] excludeMask = storage.grammemesMask(excludeGrammemes);
         List<ParsedWord> paradigm = new ArrayList<>();
         for (ParsedWord p : getLexeme()) {
-            if (p.tag.containsAll(requiredGrammemes) && !p.tag.containsAny(excludeGrammemes)) {
+            if (p.tag.containsAll(requiredMask) && !p.tag.containsAny(excludeMask)) {
                 paradigm.add(p);
             }
         }
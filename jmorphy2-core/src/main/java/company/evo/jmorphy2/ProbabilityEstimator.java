@@ -1,7 +1,8 @@
 package company.evo.jmorphy2;
 
-import java.io.InputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
 
 import company.evo.dawg.IntegerDAWG;
 
@@ -10,17 +11,36 @@ public class ProbabilityEstimator {
     public static final String PROBABILITY_FILENAME = "p_t_given_w.intdawg";
     public static final String KEY_FORMAT = "%s:%s";
     public static final float MULTIPLIER = 1000000f;
+    private static final byte[] SEPARATOR = ":".getBytes(StandardCharsets.UTF_8);
 
     private final IntegerDAWG dict;
 
     public ProbabilityEstimator(FileLoader loader) throws IOException {
-        InputStream stream = loader.newStream(PROBABILITY_FILENAME);
-        dict = new IntegerDAWG(stream);
-        stream.close();
+        dict = new IntegerDAWG(loader.newBuffer(PROBABILITY_FILENAME));
     }
 
     public float getProbability(String word, Tag tag) {
-        String key = String.format(KEY_FORMAT, word, tag);
-        return dict.get(key, 0) / MULTIPLIER;
+        return getProbability(wordIndex(word), tag);
+    }
+
+    // Probabilities of several tags for the same word, see wordIndex
+    public void getProbabilities(String word, List<Tag> tags, float[] probabilities) {
+        int wordIndex = wordIndex(word);
+        for (int i = 0; i < tags.size(); i++) {
+            probabilities[i] = getProbability(wordIndex, tags.get(i));
+        }
+    }
+
+    // Position of the "word:" in the dawg, so the word is followed once for all its tags
+    public int wordIndex(String word) {
+        return dict.followPrefix(dict.followPrefix(word), SEPARATOR);
+    }
+
+    public int wordIndex(char[] word, int offset, int length) {
+        return dict.followPrefix(dict.followPrefix(word, offset, length), SEPARATOR);
+    }
+
+    public float getProbability(int wordIndex, Tag tag) {
+        return dict.getInt(wordIndex, tag.getBytes(), 0) / MULTIPLIER;
     }
 }
@@ -1,6 +1,13 @@
 package company.evo.jmorphy2;
 
+import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.InputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+
+import org.apache.commons.io.IOUtils;
 
 
 public class ResourceFileLoader extends FileLoader {
@@ -14,4 +21,22 @@ public class ResourceFileLoader extends FileLoader {
     public InputStream newStream(String filename) {
         return getClass().getResourceAsStream(basePath + "/" + filename);
     }
+
+    @Override
+    public ByteBuffer newBuffer(String filename) throws IOException {
+        URL url = getClass().getResource(basePath + "/" + filename);
+        if (url == null) {
+            throw new FileNotFoundException(basePath + "/" + filename);
+        }
+        URLConnection connection = url.openConnection();
+        long length = connection.getContentLengthLong();
+        try (InputStream stream = connection.getInputStream()) {
+            if (length < 0) {
+                return ByteBuffer.wrap(IOUtils.toByteArray(stream));
+            }
+            byte[] data = new byte[(int) length];
+            IOUtils.readFully(stream, data);
+            return ByteBuffer.wrap(data);
+        }
+    }
 }
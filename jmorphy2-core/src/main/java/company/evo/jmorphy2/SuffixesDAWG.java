@@ -4,6 +4,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 
@@ -11,26 +12,112 @@ import company.evo.dawg.PayloadsDAWG;
 
 
 public class SuffixesDAWG extends PayloadsDAWG {
+    // Decoded payloads indexed by their ordinals
+    private short[] counts;
+    private short[] paradigmIds;
+    private short[] idxs;
+    private int payloadsSize;
+
     public SuffixesDAWG(InputStream stream) throws IOException {
         super(stream);
     }
 
+    public SuffixesDAWG(ByteBuffer buffer) {
+        this(buffer, false);
+    }
+
+    public SuffixesDAWG(ByteBuffer buffer, boolean decodePayloads) {
+        super(buffer);
+        if (decodePayloads) {
+            decodePayloads();
+        }
+    }
+
+    private void decodePayloads() {
+        counts = new short[1024];
+        paradigmIds = new short[1024];
+        idxs = new short[1024];
+        indexPayloads((key, value, offset, length) -> {
+            if (payloadsSize == counts.length) {
+                counts = Arrays.copyOf(counts, payloadsSize * 2);
+                paradigmIds = Arrays.copyOf(paradigmIds, payloadsSize * 2);
+                idxs = Arrays.copyOf(idxs, payloadsSize * 2);
+            }
+            counts[payloadsSize] = getShort(value, offset);
+            paradigmIds[payloadsSize] = getShort(value, offset + 2);
+            idxs[payloadsSize] = getShort(value, offset + 4);
+            payloadsSize++;
+        });
+        counts = Arrays.copyOf(counts, payloadsSize);
+        paradigmIds = Arrays.copyOf(paradigmIds, payloadsSize);
+        idxs = Arrays.copyOf(idxs, payloadsSize);
+    }
+
     protected SuffixForm decodePayload(Payload payload) {
-        ByteBuffer data = ByteBuffer.wrap(payload.value);
-        short count = data.getShort();
-        short paradigmId = data.getShort();
-        short idx = data.getShort();
-        return new SuffixForm(payload.key, count, paradigmId, idx);
+        return decodePayload(payload.key, payload.value, 0);
+    }
+
+    protected SuffixForm decodePayload(String key, byte[] value, int offset) {
+        return new SuffixForm(key, getShort(value, offset), getShort(value, offset + 2), getShort(value, offset + 4));
     }
 
     public List<SuffixForm> similarSuffixes(String word, Map<Character,String> replaceChars) {
         List<SuffixForm> foundSuffixes = new ArrayList<>();
-        for (Payload payload : similarItems(word, replaceChars)) {
-            foundSuffixes.add(decodePayload(payload));
-        }
+        similarSuffixes(word, replaceChars, (suffix, count, paradigmId, idx) -> {
+            foundSuffixes.add(new SuffixForm(suffix, count, paradigmId, idx));
+        });
         return foundSuffixes;
     }
 
+    public void similarSuffixes(CharSequence word,
+                                Map<Character,String> replaceChars,
+                                SuffixFormConsumer consumer)
+    {
+        if (hasPayloadIndex()) {
+            similarItemOrdinals(word, replaceChars, (key, ordinal) -> {
+                consumer.accept(key, counts[ordinal], paradigmIds[ordinal], idxs[ordinal]);
+            });
+        } else {
+            similarItems(word, replaceChars, (key, value, offset, length) -> {
+                consumer.accept(key, getShort(value, offset), getShort(value, offset + 2), getShort(value, offset + 4));
+            });
+        }
+    }
+
+    public void similarSuffixes(CharSequence word,
+                                Map<Character,String> replaceChars,
+                                RawSuffixFormConsumer consumer)
+    {
+        consumer.suffixes = this;
+        if (hasPayloadIndex()) {
+            similarRawItemOrdinals(word, replaceChars, consumer);
+        } else {
+            similarRawItems(word, replaceChars, consumer);
+        }
+    }
+
+    public interface SuffixFormConsumer {
+        void accept(String suffix, short count, short paradigmId, short idx);
+    }
+
+    // Gets found suffixes as characters, see WordsDAWG.RawWordFormConsumer
+    public static abstract class RawSuffixFormConsumer implements RawPayloadConsumer, RawOrdinalConsumer {
+        private SuffixesDAWG suffixes;
+
+        // suffix is only valid until the method returns
+        public abstract void accept(char[] suffix, int suffixLength, short count, short paradigmId, short idx);
+
+        @Override
+        public final void accept(char[] key, int keyLength, byte[] value, int offset, int length) {
+            accept(key, keyLength, getShort(value, offset), getShort(value, offset + 2), getShort(value, offset + 4));
+        }
+
+        @Override
+        public final void accept(char[] key, int keyLength, int ordinal) {
+            accept(key, keyLength, suffixes.counts[ordinal], suffixes.paradigmIds[ordinal], suffixes.idxs[ordinal]);
+        }
+    }
+
     public static class SuffixForm {
         public final String word;
         public final short count;
@@ -1,6 +1,8 @@
 package company.evo.jmorphy2;
 
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 
@@ -17,12 +19,24 @@ public class Tag {
     public static final String MOOD = "MOod";
     public static final String VOICE = "VOic";
     public static final String INVOLVEMENT = "INvl";
+    // Roots of the categories resolved for the tag fields, see Storage.categoryRoots
+    private static final List<String> CATEGORY_ROOTS = List.of(
+        PART_OF_SPEECH, ANIMACY, ASPECT, CASE, GENDER, INVOLVEMENT,
+        MOOD, NUMBER, PERSON, TENSE, TRANSITIVITY, VOICE
+    );
     private static final Set<String> NON_PRODUCTIVE_GRAMMEMES = Set.of(
         "NUMR", "NPRO", "PRED", "PREP", "CONJ", "PRCL", "INTJ", "Apro"
     );
     private final String originalTagString;
     private final String normalizedTagString;
+    private final byte[] tagBytes;
     private final Storage storage;
+    private final int id;
+    // Grammemes by their ordinals
+    private final long[] mask;
+    private final Set<String> grammemeValues;
+    private final boolean productive;
+    private final int hashCode;
 
     public final Set<Grammeme> grammemes;
     public final Grammeme POS;
@@ -40,7 +54,9 @@ public class Tag {
 
     public Tag(String tagString, Storage storage) {
         this.originalTagString = tagString;
+        this.tagBytes = tagString.getBytes(StandardCharsets.UTF_8);
         this.storage = storage;
+        this.id = storage.newTagId();
 
         Set<Grammeme> grammemes = new HashSet<>();
         String[] grammemeStrings = Storage.splitTagString(tagString);
@@ -54,66 +70,138 @@ public class Tag {
             normalizedGrammemeValues.add(grammeme.key);
         }
         this.grammemes = Set.copyOf(grammemes);
+        this.mask = grammemesMask(grammemes);
+        this.grammemeValues = grammemes.stream()
+            .map(g -> g.value)
+            .collect(Collectors.toUnmodifiableSet());
+        this.productive = Collections.disjoint(grammemeValues, NON_PRODUCTIVE_GRAMMEMES);
+        this.hashCode = Objects.hash(this.grammemes);
 
         Collections.sort(normalizedGrammemeValues);
         this.normalizedTagString = String.join(" ", normalizedGrammemeValues);
 
-        POS = getGrammemeFor(PART_OF_SPEECH);
-        anymacy = getGrammemeFor(ANIMACY);
-        aspect = getGrammemeFor(ASPECT);
-        Case = getGrammemeFor(CASE);
-        gender = getGrammemeFor(GENDER);
-        involvement = getGrammemeFor(INVOLVEMENT);
-        mood = getGrammemeFor(MOOD);
-        number = getGrammemeFor(NUMBER);
-        person = getGrammemeFor(PERSON);
-        tense = getGrammemeFor(TENSE);
-        transitivity = getGrammemeFor(TRANSITIVITY);
-        voice = getGrammemeFor(VOICE);
-    }
-
-    private Grammeme getGrammemeFor(String rootValue) {
-        Grammeme rootGrammeme = storage.getGrammeme(rootValue);
-        if (rootGrammeme == null) {
+        // in the order of CATEGORY_ROOTS
+        Grammeme[] roots = storage.categoryRoots();
+        POS = getGrammemeFor(roots[0]);
+        anymacy = getGrammemeFor(roots[1]);
+        aspect = getGrammemeFor(roots[2]);
+        Case = getGrammemeFor(roots[3]);
+        gender = getGrammemeFor(roots[4]);
+        involvement = getGrammemeFor(roots[5]);
+        mood = getGrammemeFor(roots[6]);
+        number = getGrammemeFor(roots[7]);
+        person = getGrammemeFor(roots[8]);
+        tense = getGrammemeFor(roots[9]);
+        transitivity = getGrammemeFor(roots[10]);
+        voice = getGrammemeFor(roots[11]);
+    }
+
+    // Grammeme of the tag from the category of the root grammeme
+    public Grammeme getGrammemeFor(Grammeme root) {
+        if (root == null || root.storage != storage) {
             return null;
         }
-        for (Grammeme grammeme : this.grammemes) {
-            if (rootGrammeme.equals(grammeme.getRoot())) {
-                return grammeme;
+        long[] categoryMask = storage.categoryMask(root);
+        int length = Math.min(mask.length, categoryMask.length);
+        for (int i = 0; i < length; i++) {
+            long m = mask[i] & categoryMask[i];
+            if (m != 0) {
+                return storage.grammemeAt((i << 6) + Long.numberOfTrailingZeros(m));
             }
         }
         return null;
     }
 
+    // Dense number of the tag in the storage
+    public int getId() {
+        return id;
+    }
+
+    Storage getStorage() {
+        return storage;
+    }
+
+    // Unmodifiable set
     public Set<String> getGrammemeValues() {
-        Set<String> grammemeValues = new HashSet<>();
-        for (Grammeme grammeme : grammemes) {
-            grammemeValues.add(grammeme.value);
-        }
         return grammemeValues;
     }
 
     public boolean contains(String grammemeValue) {
-        return grammemes.contains(storage.getGrammeme(grammemeValue));
+        return contains(storage.getGrammeme(grammemeValue));
     }
 
     public boolean contains(Grammeme grammeme) {
-        return grammemes.contains(grammeme);
+        if (grammeme == null || grammeme.storage != storage) {
+            return false;
+        }
+        int word = grammeme.ordinal >>> 6;
+        return word < mask.length && (mask[word] & (1L << grammeme.ordinal)) != 0;
     }
 
     public boolean containsAll(Collection<Grammeme> grammemes) {
-        return this.grammemes.containsAll(grammemes);
+        for (Grammeme grammeme : grammemes) {
+            if (!contains(grammeme)) {
+                return false;
+            }
+        }
+        return true;
     }
 
     public boolean containsAllValues(Collection<String> grammemeValues) {
         for (String grammemeValue : grammemeValues) {
-            if (!grammemes.contains(storage.getGrammeme(grammemeValue))) {
+            if (!contains(storage.getGrammeme(grammemeValue))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Bit mask of the grammemes for containsAll(long[]) and containsAny(long[]),
+    // so a set of grammemes can be checked with a few bitwise operations.
+    // Ordinals are only unique within a storage, so all the grammemes must belong
+    // to the same storage and the mask is only valid for the tags of that storage.
+    // Unknown grammemes (null, see MorphAnalyzer.getGrammeme) are skipped, tags never contain them,
+    // so for containsAll a set with an unknown grammeme must be treated as never contained
+    public static long[] grammemesMask(Collection<Grammeme> grammemes) {
+        Storage storage = null;
+        for (Grammeme grammeme : grammemes) {
+            if (grammeme == null) {
+                continue;
+            }
+            if (grammeme.storage == null) {
+                throw new IllegalArgumentException("Grammeme does not belong to a storage: " + grammeme);
+            }
+            if (storage != null && grammeme.storage != storage) {
+                throw new IllegalArgumentException("Grammemes belong to different storages: " + grammemes);
+            }
+            storage = grammeme.storage;
+        }
+        if (storage == null) {
+            return new long[0];
+        }
+        return storage.grammemesMask(grammemes);
+    }
+
+    public boolean containsAll(long[] grammemesMask) {
+        for (int i = 0; i < grammemesMask.length; i++) {
+            long m = i < mask.length ? mask[i] : 0;
+            if ((grammemesMask[i] & ~m) != 0) {
                 return false;
             }
         }
         return true;
     }
 
+    public boolean containsAny(long[] grammemesMask) {
+        int length = Math.min(mask.length, grammemesMask.length);
+        for (int i = 0; i < length; i++) {
+            if ((grammemesMask[i] & mask[i]) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     public boolean containsAny(Collection<Grammeme> grammemes) {
         for (Grammeme grammeme : grammemes) {
             if (contains(grammeme)) {
@@ -125,7 +213,7 @@ public class Tag {
 
     public boolean containsAnyValues(Collection<String> grammemeValues) {
         for (String grammemeValue : grammemeValues) {
-            if (grammemes.contains(storage.getGrammeme(grammemeValue))) {
+            if (contains(storage.getGrammeme(grammemeValue))) {
                 return true;
             }
         }
@@ -133,24 +221,30 @@ public class Tag {
     }
 
     public boolean isProductive() {
-        Set<String> isProd = getGrammemeValues();
-        isProd.retainAll(NON_PRODUCTIVE_GRAMMEMES);
-        return isProd.isEmpty();
+        return productive;
+    }
+
+    // UTF-8 encoded tag string, must not be modified
+    byte[] getBytes() {
+        return tagBytes;
     }
 
     @Override
     public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
         if (obj instanceof Tag) {
             Tag other = (Tag) obj;
-            return grammemes.equals(other.grammemes) &&
-                    storage == other.storage;
+            return storage == other.storage &&
+                    Arrays.equals(mask, other.mask);
         }
         return false;
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(grammemes);
+        return hashCode;
     }
 
     @Override
@@ -158,10 +252,17 @@ public class Tag {
         return originalTagString;
     }
 
-    // TODO: make as API
+    // Lookups are lock free, registration of new tags and grammemes is serialized
+    // so storage can be shared between threads
     static public class Storage {
-        private final Map<String,Tag> tags = new HashMap<>();
-        private final Map<String,Grammeme> grammemes = new HashMap<>();
+        private final Map<String,Tag> tags = new ConcurrentHashMap<>();
+        private final Map<String,Grammeme> grammemes = new ConcurrentHashMap<>();
+        private int grammemesCount;
+        private int tagsCount;
+        // Registered tags by their ids, replaced when it grows
+        private volatile Tag[] tagsById = new Tag[0];
+        // Replaced as a whole when a new grammeme is added
+        private volatile Hierarchy hierarchy = Hierarchy.EMPTY;
 
         static String normalizeGrammemeValue(String grammemeValue) {
             return grammemeValue.toLowerCase();
@@ -186,14 +287,26 @@ public class Tag {
         }
 
         public Collection<Tag> getAllTags() {
-            return tags.values();
+            return Collections.unmodifiableCollection(tags.values());
+        }
+
+        // Returns null when there is no registered tag with the id
+        public Tag getTag(int id) {
+            Tag[] byId = tagsById;
+            return id >= 0 && id < byId.length ? byId[id] : null;
         }
 
         private void addTag(Tag tag) {
             tags.put(tag.normalizedTagString, tag);
+            Tag[] byId = tagsById;
+            if (tag.id >= byId.length) {
+                byId = Arrays.copyOf(byId, Math.max(tag.id + 1, byId.length * 2));
+            }
+            byId[tag.id] = tag;
+            tagsById = byId;
         }
 
-        public Tag newTag(String tagString) {
+        public synchronized Tag newTag(String tagString) {
             Tag tag = getTag(tagString);
             if (tag == null) {
                 tag = new Tag(tagString, this);
@@ -202,6 +315,14 @@ public class Tag {
             return tag;
         }
 
+        synchronized int newGrammemeOrdinal() {
+            return grammemesCount++;
+        }
+
+        synchronized int newTagId() {
+            return tagsCount++;
+        }
+
         public Grammeme getGrammeme(String grammemeValue) {
             if (grammemeValue == null) {
                 return null;
@@ -210,14 +331,105 @@ public class Tag {
         }
 
         public Collection<Grammeme> getAllGrammemes() {
-            return grammemes.values();
+            return Collections.unmodifiableCollection(grammemes.values());
         }
 
         private void addGrammeme(Grammeme grammeme) {
             grammemes.put(grammeme.key, grammeme);
+            Grammeme[] byOrdinal = hierarchy.grammemes;
+            if (grammeme.ordinal >= byOrdinal.length) {
+                byOrdinal = Arrays.copyOf(byOrdinal, grammeme.ordinal + 1);
+            } else {
+                byOrdinal = byOrdinal.clone();
+            }
+            byOrdinal[grammeme.ordinal] = grammeme;
+            // grammemes can be registered before their parents
+            // so the whole hierarchy is recalculated
+            hierarchy = new Hierarchy(byOrdinal, grammemes);
+        }
+
+        // Mask of the grammemes of this storage, see Tag.grammemesMask.
+        // Grammemes of other storages and unknown ones (null) are skipped,
+        // the tags of this storage never contain them
+        public long[] grammemesMask(Collection<Grammeme> grammemes) {
+            int maxOrdinal = -1;
+            for (Grammeme grammeme : grammemes) {
+                if (grammeme != null && grammeme.storage == this) {
+                    maxOrdinal = Math.max(maxOrdinal, grammeme.ordinal);
+                }
+            }
+            if (maxOrdinal < 0) {
+                return new long[0];
+            }
+            long[] mask = new long[(maxOrdinal >>> 6) + 1];
+            for (Grammeme grammeme : grammemes) {
+                if (grammeme != null && grammeme.storage == this) {
+                    mask[grammeme.ordinal >>> 6] |= 1L << grammeme.ordinal;
+                }
+            }
+            return mask;
+        }
+
+        Grammeme grammemeAt(int ordinal) {
+            return hierarchy.grammemes[ordinal];
+        }
+
+        Grammeme getParent(Grammeme grammeme) {
+            Hierarchy h = hierarchy;
+            if (!h.contains(grammeme)) {
+                return getGrammeme(grammeme.parentValue);
+            }
+            int parent = h.parents[grammeme.ordinal];
+            return parent >= 0 ? h.grammemes[parent] : null;
+        }
+
+        Grammeme getRoot(Grammeme grammeme) {
+            Hierarchy h = hierarchy;
+            if (!h.contains(grammeme)) {
+                Grammeme root = null;
+                Grammeme parent = getGrammeme(grammeme.parentValue);
+                while (parent != null) {
+                    root = parent;
+                    parent = getGrammeme(parent.parentValue);
+                }
+                return root;
+            }
+            int root = h.roots[grammeme.ordinal];
+            return root >= 0 ? h.grammemes[root] : null;
+        }
+
+        // Registered roots of CATEGORY_ROOTS (null when missing), must not be modified
+        Grammeme[] categoryRoots() {
+            return hierarchy.categoryRoots;
         }
 
-        public Grammeme newGrammeme(List<String> grammemeInfo) {
+        // Must not be modified
+        long[] categoryMask(Grammeme root) {
+            Hierarchy h = hierarchy;
+            if (!h.contains(root) || h.categories[root.ordinal] == null) {
+                return Hierarchy.EMPTY_MASK;
+            }
+            return h.categories[root.ordinal];
+        }
+
+        // Mask of all grammemes which have the root grammeme as their root
+        public long[] getCategoryMask(Grammeme root) {
+            return categoryMask(root).clone();
+        }
+
+        public List<Grammeme> getCategoryGrammemes(Grammeme root) {
+            Hierarchy h = hierarchy;
+            long[] categoryMask = categoryMask(root);
+            List<Grammeme> category = new ArrayList<>();
+            for (int i = 0; i < categoryMask.length; i++) {
+                for (long m = categoryMask[i]; m != 0; m &= m - 1) {
+                    category.add(h.grammemes[(i << 6) + Long.numberOfTrailingZeros(m)]);
+                }
+            }
+            return category;
+        }
+
+        public synchronized Grammeme newGrammeme(List<String> grammemeInfo) {
             Grammeme grammeme = getGrammeme(grammemeInfo.get(0));
             if (grammeme == null) {
                 grammeme = new Grammeme(grammemeInfo, this);
@@ -225,5 +437,58 @@ public class Tag {
             }
             return grammeme;
         }
+
+        // Immutable grammemes hierarchy indexed by grammeme ordinals
+        private static final class Hierarchy {
+            static final long[] EMPTY_MASK = new long[0];
+            static final Hierarchy EMPTY = new Hierarchy(new Grammeme[0], Map.of());
+
+            final Grammeme[] grammemes;
+            final int[] parents;
+            final int[] roots;
+            // Masks of the grammemes under every root, null for not root grammemes
+            final long[][] categories;
+            final Grammeme[] categoryRoots;
+
+            Hierarchy(Grammeme[] grammemes, Map<String,Grammeme> grammemesByKey) {
+                int size = grammemes.length;
+                this.grammemes = grammemes;
+                this.parents = new int[size];
+                this.roots = new int[size];
+                this.categories = new long[size][];
+                for (int i = 0; i < size; i++) {
+                    Grammeme grammeme = grammemes[i];
+                    Grammeme parent = null;
+                    if (grammeme != null && grammeme.parentValue != null) {
+                        parent = grammemesByKey.get(normalizeGrammemeValue(grammeme.parentValue));
+                    }
+                    parents[i] = parent != null ? parent.ordinal : -1;
+                }
+                for (int i = 0; i < size; i++) {
+                    int root = -1;
+                    // depth is limited in case of cycles
+                    for (int p = parents[i], depth = 0; p >= 0 && depth < size; p = parents[p], depth++) {
+                        root = p;
+                    }
+                    roots[i] = root;
+                    if (root >= 0) {
+                        if (categories[root] == null) {
+                            categories[root] = new long[((size - 1) >>> 6) + 1];
+                        }
+                        categories[root][i >>> 6] |= 1L << i;
+                    }
+                }
+                this.categoryRoots = new Grammeme[CATEGORY_ROOTS.size()];
+                for (int i = 0; i < categoryRoots.length; i++) {
+                    categoryRoots[i] = grammemesByKey.get(normalizeGrammemeValue(CATEGORY_ROOTS.get(i)));
+                }
+            }
+
+            boolean contains(Grammeme grammeme) {
+                return grammeme.ordinal >= 0 &&
+                        grammeme.ordinal < grammemes.length &&
+                        grammemes[grammeme.ordinal] == grammeme;
+            }
+        }
     };
 }
@@ -0,0 +1,236 @@
+package company.evo.jmorphy2;
+
+import java.io.IOException;
+import java.io.Reader;
+
+
+// Splits a text into words, numbers and punctuation in a single pass and parses
+// every token, so the text is never kept in memory as a whole.
+// Character classes follow the analyzer units: letters and digits
+// (joined by hyphens, numbers also by dots and commas) form words, numbers and latin words,
+// runs of punctuation are tokens too, everything else separates tokens.
+// Tokens longer than MAX_TOKEN_LENGTH are split.
+// Results of a token are valid only until the listener returns.
+// A lemmatizer must not be used from several threads at once
+public class TextLemmatizer {
+    public static final int MAX_TOKEN_LENGTH = 255;
+    private static final int BUFFER_SIZE = 4096;
+
+    private static final int SPACE = 0;
+    private static final int LETTER = 1;
+    private static final int DIGIT = 2;
+    private static final int PUNCTUATION = 3;
+
+    public enum TokenType {
+        WORD, LATIN, NUMBER, PUNCTUATION
+    }
+
+    public interface TokenListener {
+        void onToken(long offset, int length, TokenType type, ParseContext context);
+    }
+
+    private final MorphAnalyzer morph;
+    private final boolean normalFormsOnly;
+    private final ParseContext context;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private final char[] token = new char[MAX_TOKEN_LENGTH];
+
+    private TokenListener listener;
+    // Offset of the current character
+    private long offset;
+    private long tokenOffset;
+    private int tokenLength;
+    // SPACE when there is no token, LETTER for words and numbers
+    private int tokenClass;
+    private boolean hasLetters;
+    private boolean latinOnly;
+    // Hyphen, dot or comma which joins the token with the next character
+    private char separator;
+
+    public TextLemmatizer(MorphAnalyzer morph) {
+        this(morph, false);
+    }
+
+    // When normalFormsOnly is set the context contains a result for every unique normal form
+    // in no particular order, see MorphAnalyzer.normalForms
+    public TextLemmatizer(MorphAnalyzer morph, boolean normalFormsOnly) {
+        this.morph = morph;
+        this.normalFormsOnly = normalFormsOnly;
+        this.context = morph.newParseContext();
+    }
+
+    public void process(CharSequence text, TokenListener listener) {
+        start(listener);
+        for (int i = 0; i < text.length(); i++) {
+            next(text.charAt(i));
+        }
+        finish();
+    }
+
+    public void process(Reader reader, TokenListener listener) throws IOException {
+        start(listener);
+        int count;
+        while ((count = reader.read(buffer)) != -1) {
+            for (int i = 0; i < count; i++) {
+                next(buffer[i]);
+            }
+        }
+        finish();
+    }
+
+    private void start(TokenListener listener) {
+        this.listener = listener;
+        offset = 0;
+        tokenLength = 0;
+        tokenClass = SPACE;
+        separator = 0;
+    }
+
+    private void finish() {
+        if (separator != 0) {
+            char c = separator;
+            separator = 0;
+            emit();
+            startToken(PUNCTUATION, offset - 1);
+            append(c);
+        }
+        emit();
+        listener = null;
+    }
+
+    private void next(char c) {
+        int charClass = charClass(c);
+        if (separator != 0) {
+            char s = separator;
+            separator = 0;
+            boolean joins = s == '-' ? charClass == LETTER || charClass == DIGIT : charClass == DIGIT;
+            if (joins && tokenLength + 2 <= MAX_TOKEN_LENGTH) {
+                append(s);
+            } else {
+                emit();
+                startToken(PUNCTUATION, offset - 1);
+                append(s);
+            }
+        }
+
+        if (charClass == SPACE) {
+            emit();
+        } else if (charClass == PUNCTUATION) {
+            if (tokenClass == LETTER && isSeparator(c)) {
+                separator = c;
+            } else {
+                if (tokenClass != PUNCTUATION) {
+                    emit();
+                    startToken(PUNCTUATION, offset);
+                }
+                append(c);
+            }
+        } else {
+            if (tokenClass != LETTER) {
+                emit();
+                startToken(LETTER, offset);
+            }
+            append(c);
+            if (charClass == LETTER) {
+                hasLetters = true;
+                if (latinOnly && !isLatin(c) && Character.getType(c) != Character.NON_SPACING_MARK) {
+                    latinOnly = false;
+                }
+            }
+        }
+        offset++;
+    }
+
+    private boolean isSeparator(char c) {
+        if (c == '-') {
+            return true;
+        }
+        return (c == '.' || c == ',') && tokenLength > 0 && charClass(token[tokenLength - 1]) == DIGIT;
+    }
+
+    private void startToken(int charClass, long offset) {
+        tokenClass = charClass;
+        tokenOffset = offset;
+        tokenLength = 0;
+        hasLetters = false;
+        latinOnly = true;
+    }
+
+    private void append(char c) {
+        if (tokenLength == MAX_TOKEN_LENGTH) {
+            int charClass = tokenClass;
+            emit();
+            startToken(charClass, offset);
+        }
+        token[tokenLength++] = c;
+    }
+
+    private void emit() {
+        if (tokenLength == 0) {
+            tokenClass = SPACE;
+            return;
+        }
+        TokenType type;
+        if (tokenClass == PUNCTUATION) {
+            type = TokenType.PUNCTUATION;
+        } else if (!hasLetters) {
+            type = TokenType.NUMBER;
+        } else if (latinOnly) {
+            type = TokenType.LATIN;
+        } else {
+            type = TokenType.WORD;
+        }
+        if (normalFormsOnly) {
+            morph.normalForms(token, 0, tokenLength, false, context);
+        } else {
+            morph.parse(token, 0, tokenLength, context);
+        }
+        listener.onToken(tokenOffset, tokenLength, type, context);
+        tokenLength = 0;
+        tokenClass = SPACE;
+    }
+
+    private static int charClass(char c) {
+        if (c < 128) {
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')) {
+                return LETTER;
+            }
+            if (c >= '0' && c <= '9') {
+                return DIGIT;
+            }
+            // \p{Punct}
+            if (c > ' ' && c < 127) {
+                return PUNCTUATION;
+            }
+            return SPACE;
+        }
+        switch (Character.getType(c)) {
+            case Character.UPPERCASE_LETTER:
+            case Character.LOWERCASE_LETTER:
+            case Character.TITLECASE_LETTER:
+            case Character.MODIFIER_LETTER:
+            case Character.OTHER_LETTER:
+            case Character.NON_SPACING_MARK:
+                return LETTER;
+            case Character.DECIMAL_DIGIT_NUMBER:
+                return DIGIT;
+            case Character.CONNECTOR_PUNCTUATION:
+            case Character.DASH_PUNCTUATION:
+            case Character.START_PUNCTUATION:
+            case Character.END_PUNCTUATION:
+            case Character.INITIAL_QUOTE_PUNCTUATION:
+            case Character.FINAL_QUOTE_PUNCTUATION:
+            case Character.OTHER_PUNCTUATION:
+                return PUNCTUATION;
+            default:
+                return SPACE;
+        }
+    }
+
+    private static boolean isLatin(char c) {
+        if (c < 128) {
+            return true;
+        }
+        return Character.UnicodeScript.of(c) == Character.UnicodeScript.LATIN;
+    }
+}
@@ -0,0 +1,64 @@
+package company.evo.jmorphy2;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+
+// Small cache of the most frequent words in front of a larger one,
+// results found in the second cache are moved into the first one
+class TieredParseCache implements ParseCache {
+    private final ParseCache first;
+    private final ParseCache second;
+
+    TieredParseCache(ParseCache first, ParseCache second) {
+        this.first = first;
+        this.second = second;
+    }
+
+    @Override
+    public List<ParsedWord> get(String wordLower) {
+        List<ParsedWord> parsedWords = first.get(wordLower);
+        if (parsedWords == null) {
+            parsedWords = second.get(wordLower);
+            if (parsedWords != null) {
+                first.put(wordLower, parsedWords);
+            }
+        }
+        return parsedWords;
+    }
+
+    @Override
+    public void put(String wordLower, List<ParsedWord> parsedWords) {
+        first.put(wordLower, parsedWords);
+        second.put(wordLower, parsedWords);
+    }
+
+    @Override
+    public List<String> hotWords(int limit) {
+        Set<String> words = new LinkedHashSet<>(first.hotWords(limit));
+        for (String word : second.hotWords(limit)) {
+            if (words.size() >= limit) {
+                break;
+            }
+            words.add(word);
+        }
+        return new ArrayList<>(words);
+    }
+
+    // Words evicted from the first cache are still in the second one,
+    // so only misses and evictions of the second cache are counted,
+    // results are put into both caches and either of them can reject them
+    @Override
+    public Stats getStats() {
+        Stats firstStats = first.getStats();
+        Stats secondStats = second.getStats();
+        return new Stats(
+            firstStats.hitCount + secondStats.hitCount,
+            secondStats.missCount,
+            secondStats.evictionCount,
+            firstStats.rejectionCount + secondStats.rejectionCount
+        );
+    }
+}
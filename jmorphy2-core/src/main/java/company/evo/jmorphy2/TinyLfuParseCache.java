@@ -0,0 +1,205 @@
+package company.evo.jmorphy2;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+
+// Size bounded cache. Entries are split into segments which are kept in LRU order.
+// When a segment is full a new word replaces the least recently used one
+// only if the word was requested more often, so words which are seen once
+// cannot evict frequent ones. Frequencies are estimated by a count-min sketch
+// with 4-bit counters which are halved periodically, so old frequencies fade out
+public class TinyLfuParseCache implements ParseCache {
+    private static final int MAX_SEGMENTS = 16;
+    private static final int MIN_SEGMENT_SIZE = 256;
+
+    private final Segment[] segments;
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+
+    public TinyLfuParseCache(int maximumSize) {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("Cache size must be positive: " + maximumSize);
+        }
+        int numSegments = 1;
+        while (numSegments < MAX_SEGMENTS && maximumSize / (numSegments * 2) >= MIN_SEGMENT_SIZE) {
+            numSegments *= 2;
+        }
+        segments = new Segment[numSegments];
+        for (int i = 0; i < numSegments; i++) {
+            segments[i] = new Segment(maximumSize / numSegments + (i < maximumSize % numSegments ? 1 : 0));
+        }
+    }
+
+    @Override
+    public List<ParsedWord> get(String wordLower) {
+        int hash = hash(wordLower);
+        Segment segment = segment(hash);
+        List<ParsedWord> parsedWords;
+        synchronized (segment) {
+            segment.sketch.increment(hash);
+            parsedWords = segment.entries.get(wordLower);
+        }
+        if (parsedWords != null) {
+            hitCount.increment();
+        } else {
+            missCount.increment();
+        }
+        return parsedWords;
+    }
+
+    @Override
+    public void put(String wordLower, List<ParsedWord> parsedWords) {
+        int hash = hash(wordLower);
+        Segment segment = segment(hash);
+        synchronized (segment) {
+            Map<String,List<ParsedWord>> entries = segment.entries;
+            if (entries.size() < segment.capacity || entries.containsKey(wordLower)) {
+                entries.put(wordLower, parsedWords);
+                return;
+            }
+            Iterator<String> lru = entries.keySet().iterator();
+            String victim = lru.next();
+            if (segment.sketch.frequency(hash) <= segment.sketch.frequency(hash(victim))) {
+                return;
+            }
+            lru.remove();
+            entries.put(wordLower, parsedWords);
+        }
+        evictionCount.increment();
+    }
+
+    @Override
+    public Stats getStats() {
+        return new Stats(hitCount.sum(), missCount.sum(), evictionCount.sum());
+    }
+
+    // Words are ordered by their estimated frequencies
+    @Override
+    public List<String> hotWords(int limit) {
+        List<String> words = new ArrayList<>();
+        List<Integer> frequencies = new ArrayList<>();
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                for (String word : segment.entries.keySet()) {
+                    words.add(word);
+                    frequencies.add(segment.sketch.frequency(hash(word)));
+                }
+            }
+        }
+        Integer[] order = new Integer[words.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Integer.compare(frequencies.get(b), frequencies.get(a)));
+        List<String> hotWords = new ArrayList<>(Math.min(limit, order.length));
+        for (int i = 0; i < order.length && i < limit; i++) {
+            hotWords.add(words.get(order[i]));
+        }
+        return hotWords;
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.entries.size();
+            }
+        }
+        return size;
+    }
+
+    private Segment segment(int hash) {
+        return segments[(hash >>> 16) & (segments.length - 1)];
+    }
+
+    private static int hash(String word) {
+        int h = word.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 15);
+    }
+
+    private static class Segment {
+        final int capacity;
+        // Access ordered, the first entry is the least recently used one
+        final LinkedHashMap<String,List<ParsedWord>> entries = new LinkedHashMap<>(16, 0.75f, true);
+        final FrequencySketch sketch;
+
+        Segment(int capacity) {
+            this.capacity = capacity;
+            this.sketch = new FrequencySketch(capacity);
+        }
+    }
+
+    private static class FrequencySketch {
+        private static final long[] SEEDS = {
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+        };
+        private static final long RESET_MASK = 0x7777777777777777L;
+        private static final int MAX_FREQUENCY = 15;
+
+        // Every long holds 16 counters
+        private final long[] table;
+        private final int sampleSize;
+        private int additions;
+
+        FrequencySketch(int capacity) {
+            int size = 8;
+            while (size < capacity) {
+                size *= 2;
+            }
+            table = new long[size];
+            sampleSize = 10 * size;
+        }
+
+        int frequency(int hash) {
+            int frequency = MAX_FREQUENCY;
+            for (int i = 0; i < SEEDS.length; i++) {
+                long h = mix(hash, i);
+                frequency = Math.min(frequency, (int) (table[index(h)] >>> offset(h)) & MAX_FREQUENCY);
+            }
+            return frequency;
+        }
+
+        void increment(int hash) {
+            boolean added = false;
+            for (int i = 0; i < SEEDS.length; i++) {
+                long h = mix(hash, i);
+                int index = index(h);
+                int offset = offset(h);
+                if (((table[index] >>> offset) & MAX_FREQUENCY) < MAX_FREQUENCY) {
+                    table[index] += 1L << offset;
+                    added = true;
+                }
+            }
+            if (added && ++additions == sampleSize) {
+                reset();
+            }
+        }
+
+        private void reset() {
+            for (int i = 0; i < table.length; i++) {
+                table[i] = (table[i] >>> 1) & RESET_MASK;
+            }
+            additions /= 2;
+        }
+
+        private static long mix(int hash, int i) {
+            long h = (hash + SEEDS[i]) * SEEDS[i];
+            return h ^ (h >>> 32);
+        }
+
+        private int index(long h) {
+            return (int) h & (table.length - 1);
+        }
+
+        private static int offset(long h) {
+            return (int) (h >>> 60) << 2;
+        }
+    }
+}
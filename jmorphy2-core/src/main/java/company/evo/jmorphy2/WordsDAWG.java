@@ -4,6 +4,8 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
@@ -11,25 +13,202 @@ import company.evo.dawg.PayloadsDAWG;
 
 
 public class WordsDAWG extends PayloadsDAWG {
+    // Decoded payloads indexed by their ordinals
+    private short[] paradigmIds;
+    private short[] idxs;
+    private int payloadsSize;
+
     public WordsDAWG(InputStream stream) throws IOException {
         super(stream);
     }
 
+    public WordsDAWG(ByteBuffer buffer) {
+        this(buffer, false);
+    }
+
+    public WordsDAWG(ByteBuffer buffer, boolean decodePayloads) {
+        super(buffer);
+        if (decodePayloads) {
+            decodePayloads();
+        }
+    }
+
+    private void decodePayloads() {
+        paradigmIds = new short[1024];
+        idxs = new short[1024];
+        indexPayloads((key, value, offset, length) -> {
+            if (payloadsSize == paradigmIds.length) {
+                paradigmIds = Arrays.copyOf(paradigmIds, payloadsSize * 2);
+                idxs = Arrays.copyOf(idxs, payloadsSize * 2);
+            }
+            paradigmIds[payloadsSize] = getShort(value, offset);
+            idxs[payloadsSize] = getShort(value, offset + 2);
+            payloadsSize++;
+        });
+        paradigmIds = Arrays.copyOf(paradigmIds, payloadsSize);
+        idxs = Arrays.copyOf(idxs, payloadsSize);
+    }
+
     protected WordForm decodePayload(Payload payload) {
-        ByteBuffer data = ByteBuffer.wrap(payload.value);
-        short paradigmId = data.getShort();
-        short idx = data.getShort();
-        return new WordForm(payload.key, paradigmId, idx);
+        return decodePayload(payload.key, payload.value, 0);
+    }
+
+    protected WordForm decodePayload(String key, byte[] value, int offset) {
+        return new WordForm(key, getShort(value, offset), getShort(value, offset + 2));
     }
 
     public List<WordForm> similarWords(String word, Map<Character,String> replaceChars) {
         List<WordForm> foundWords = new ArrayList<>();
-        for (Payload payload : similarItems(word, replaceChars)) {
-            foundWords.add(decodePayload(payload));
+        similarWords(word, replaceChars, (foundWord, paradigmId, idx) -> {
+            foundWords.add(new WordForm(foundWord, paradigmId, idx));
+        });
+        return foundWords;
+    }
+
+    public void similarWords(CharSequence word,
+                             Map<Character,String> replaceChars,
+                             WordFormConsumer consumer)
+    {
+        if (hasPayloadIndex()) {
+            similarItemOrdinals(word, replaceChars, (key, ordinal) -> {
+                consumer.accept(key, paradigmIds[ordinal], idxs[ordinal]);
+            });
+        } else {
+            similarItems(word, replaceChars, (key, value, offset, length) -> {
+                consumer.accept(key, getShort(value, offset), getShort(value, offset + 2));
+            });
         }
+    }
+
+    public void similarWords(Batch batch,
+                             CharSequence word,
+                             Map<Character,String> replaceChars,
+                             WordFormConsumer consumer)
+    {
+        if (hasPayloadIndex()) {
+            batch.similarItemOrdinals(word, replaceChars, (key, ordinal) -> {
+                consumer.accept(key, paradigmIds[ordinal], idxs[ordinal]);
+            });
+        } else {
+            batch.similarItems(word, replaceChars, (key, value, offset, length) -> {
+                consumer.accept(key, getShort(value, offset), getShort(value, offset + 2));
+            });
+        }
+    }
+
+    public void similarWords(CharSequence word,
+                             Map<Character,String> replaceChars,
+                             RawWordFormConsumer consumer)
+    {
+        consumer.words = this;
+        if (hasPayloadIndex()) {
+            similarRawItemOrdinals(word, replaceChars, consumer);
+        } else {
+            similarRawItems(word, replaceChars, consumer);
+        }
+    }
+
+    public void similarWords(Batch batch,
+                             CharSequence word,
+                             Map<Character,String> replaceChars,
+                             RawWordFormConsumer consumer)
+    {
+        consumer.words = this;
+        if (hasPayloadIndex()) {
+            batch.similarRawItemOrdinals(word, replaceChars, consumer);
+        } else {
+            batch.similarRawItems(word, replaceChars, consumer);
+        }
+    }
+
+    // Closest words within maxEdits edit distance
+    public List<WordForm> fuzzyWords(String word, int maxEdits, int limit) {
+        return fuzzyWords(word, null, maxEdits, limit);
+    }
+
+    public List<WordForm> fuzzyWords(String word, Map<Character,String> replaceChars, int maxEdits, int limit) {
+        List<WordForm> foundWords = new ArrayList<>();
+        fuzzyWords(word, replaceChars, maxEdits, limit, (foundWord, distance, paradigmId, idx) -> {
+            foundWords.add(new WordForm(foundWord, paradigmId, idx));
+        });
         return foundWords;
     }
 
+    public void fuzzyWords(CharSequence word, int maxEdits, int limit, FuzzyWordFormConsumer consumer) {
+        fuzzyWords(word, null, maxEdits, limit, consumer);
+    }
+
+    public void fuzzyWords(CharSequence word,
+                           Map<Character,String> replaceChars,
+                           int maxEdits,
+                           int limit,
+                           FuzzyWordFormConsumer consumer)
+    {
+        fuzzyItems(word, replaceChars, maxEdits, limit, (key, distance, value, offset, length) -> {
+            consumer.accept(key, distance, getShort(value, offset), getShort(value, offset + 2));
+        });
+    }
+
+    public void fuzzyWords(CharSequence word,
+                           Map<Character,String> replaceChars,
+                           int maxEdits,
+                           int limit,
+                           RawFuzzyWordFormConsumer consumer)
+    {
+        fuzzyRawItems(word, replaceChars, maxEdits, limit, consumer);
+    }
+
+    public Iterator<WordForm> wordsWithPrefix(String prefix) {
+        return wordsWithPrefix(prefix, Integer.MAX_VALUE);
+    }
+
+    public Iterator<WordForm> wordsWithPrefix(String prefix, int limit) {
+        return new PrefixIterator<WordForm>(this, prefix, limit) {
+            @Override
+            protected WordForm newItem(String key, byte[] value, int offset, int length) {
+                return decodePayload(key, value, offset);
+            }
+        };
+    }
+
+    public interface WordFormConsumer {
+        void accept(String word, short paradigmId, short idx);
+    }
+
+    public interface FuzzyWordFormConsumer {
+        void accept(String word, int distance, short paradigmId, short idx);
+    }
+
+    // Gets found words as characters, so a lookup allocates nothing.
+    // An instance must not be used by several lookups at once
+    public static abstract class RawWordFormConsumer implements RawPayloadConsumer, RawOrdinalConsumer {
+        private WordsDAWG words;
+
+        // word is only valid until the method returns
+        public abstract void accept(char[] word, int wordLength, short paradigmId, short idx);
+
+        @Override
+        public final void accept(char[] key, int keyLength, byte[] value, int offset, int length) {
+            accept(key, keyLength, getShort(value, offset), getShort(value, offset + 2));
+        }
+
+        @Override
+        public final void accept(char[] key, int keyLength, int ordinal) {
+            accept(key, keyLength, words.paradigmIds[ordinal], words.idxs[ordinal]);
+        }
+    }
+
+    // Same as RawWordFormConsumer but for fuzzyWords
+    public static abstract class RawFuzzyWordFormConsumer implements RawFuzzyPayloadConsumer {
+        // word is only valid until the method returns
+        public abstract void accept(char[] word, int wordLength, int distance, short paradigmId, short idx);
+
+        @Override
+        public final void accept(char[] key, int keyLength, int distance, byte[] value, int offset, int length) {
+            accept(key, keyLength, distance, getShort(value, offset), getShort(value, offset + 2));
+        }
+    }
+
     public static class WordForm {
         public final String word;
         public final short paradigmId;
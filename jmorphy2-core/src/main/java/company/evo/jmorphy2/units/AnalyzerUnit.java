@@ -4,6 +4,7 @@ import java.io.IOException;
 import java.util.Collections;
 import java.util.List;
 
+import company.evo.jmorphy2.ParseContext;
 import company.evo.jmorphy2.ParsedWord;
 import company.evo.jmorphy2.Tag;
 
@@ -43,13 +44,75 @@ public abstract class AnalyzerUnit {
         return terminate;
     }
 
+    // Returns false when the unit cannot parse a word consisting of the characters,
+    // see CharClasses
+    public boolean accepts(int charClasses) {
+        return true;
+    }
+
+    // Returns false when the results are the same for all the words
+    // which differ only in case, so they can be cached by the lowercased word
+    public boolean dependsOnCase() {
+        return true;
+    }
+
     public abstract List<ParsedWord> parse(String word, String wordLower);
 
+    // Adds results into the context, returns false when the unit cannot parse the word.
+    // Units may override it to add packed candidates instead of ParsedWord objects
+    public boolean parse(ParseContext context) {
+        List<ParsedWord> parseds = parse(context.getWord(), context.getWordLower());
+        if (parseds == null) {
+            return false;
+        }
+        context.addAll(parseds);
+        return true;
+    }
+
+    // Builds a result of the word form collected by ParseContext.wordFormConsumer,
+    // the prefix of the word goes before the found word
+    public final ParsedWord newParsedWord(String word, Tag tag, String normalForm, String foundWord,
+                                          short paradigmId, short idx, int prefixLength, float score) {
+        return restoreParsedWord(word, tag, normalForm, foundWord, paradigmId, idx, (short) 0, prefixLength, score);
+    }
+
+    // Restores a parsed word of the unit from the fields written by ParsedWordCodec
+    ParsedWord restoreParsedWord(String word, Tag tag, String normalForm, String foundWord,
+                                 short paradigmId, short idx, short count, int prefixLength, float score) {
+        return new AnalyzerParsedWord(word, tag, normalForm, foundWord, score);
+    }
+
     class AnalyzerParsedWord extends ParsedWord {
         public AnalyzerParsedWord(String word, Tag tag, String normalForm, String foundWord, float score) {
             super(word, tag, normalForm, foundWord, score);
         }
 
+        AnalyzerUnit getUnit() {
+            return AnalyzerUnit.this;
+        }
+
+        // Subclasses with other fields must override the following methods,
+        // otherwise they are not restored by ParsedWordCodec
+        boolean isRestorable() {
+            return getClass() == AnalyzerParsedWord.class;
+        }
+
+        short getParadigmId() {
+            return -1;
+        }
+
+        short getIdx() {
+            return -1;
+        }
+
+        short getCount() {
+            return 0;
+        }
+
+        int getPrefixLength() {
+            return 0;
+        }
+
         @Override
         public ParsedWord rescore(float newScore) {
             return new AnalyzerParsedWord(word, tag, normalForm, foundWord, newScore);
@@ -6,6 +6,7 @@ import java.util.List;
 import java.util.Map;
 
 import company.evo.jmorphy2.Dictionary;
+import company.evo.jmorphy2.ParseContext;
 import company.evo.jmorphy2.ParsedWord;
 import company.evo.jmorphy2.Tag;
 import company.evo.jmorphy2.WordsDAWG;
@@ -53,17 +54,73 @@ public class DictionaryUnit extends AnalyzerUnit {
         return dict;
     }
 
+    @Override
+    public boolean dependsOnCase() {
+        return false;
+    }
+
     @Override
     public List<ParsedWord> parse(String word, String wordLower) {
         List<ParsedWord> parseds = new ArrayList<>();
-        for (WordsDAWG.WordForm wf : dict.getWords().similarWords(wordLower, charSubstitutes)) {
-            String normalForm = dict.buildNormalForm(wf.paradigmId, wf.idx, wf.word);
-            Tag tag = dict.buildTag(wf.paradigmId, wf.idx);
-            parseds.add(new DictionaryParsedWord(wordLower, tag, normalForm, wf.word, wf, score));
+        dict.getWords().similarWords(wordLower, charSubstitutes, (foundWord, paradigmId, idx) -> {
+            parseds.add(newParsedWord(wordLower, foundWord, paradigmId, idx));
+        });
+        return parseds;
+    }
+
+    @Override
+    public boolean parse(ParseContext context) {
+        parse(context, this, 0, score);
+        return true;
+    }
+
+    // Looks up the rest of the word after the prefix, results are built by the given unit, see PrefixedUnit
+    void parse(ParseContext context, AnalyzerUnit resultUnit, int prefixLength, float score) {
+        WordsDAWG words = dict.getWords();
+        WordsDAWG.RawWordFormConsumer consumer = context.wordFormConsumer(resultUnit, dict, prefixLength, score);
+        CharSequence wordLower = context.getWordLowerChars(prefixLength);
+        // Prefixed lookups would break the main path of the batch
+        WordsDAWG.Batch batch = prefixLength == 0 ? context.getBatch(this, words) : null;
+        if (batch != null) {
+            words.similarWords(batch, wordLower, charSubstitutes, consumer);
+        } else {
+            words.similarWords(wordLower, charSubstitutes, consumer);
         }
+    }
+
+    // Words of the dictionary which are close to the given one, see FuzzyDictionaryUnit
+    List<ParsedWord> parseFuzzy(String wordLower, int maxEdits, int limit, float score) {
+        List<ParsedWord> parseds = new ArrayList<>();
+        WordsDAWG words = dict.getWords();
+        words.fuzzyWords(wordLower, charSubstitutes, maxEdits, limit, (foundWord, distance, paradigmId, idx) -> {
+            parseds.add(newParsedWord(wordLower, foundWord, paradigmId, idx, score / (distance + 1)));
+        });
         return parseds;
     }
 
+    void parseFuzzy(ParseContext context, int maxEdits, int limit, float score) {
+        WordsDAWG.RawFuzzyWordFormConsumer consumer = context.fuzzyWordFormConsumer(this, dict, score);
+        dict.getWords().fuzzyWords(context.getWordLowerChars(0), charSubstitutes, maxEdits, limit, consumer);
+    }
+
+    private ParsedWord newParsedWord(String wordLower, String foundWord, short paradigmId, short idx) {
+        return newParsedWord(wordLower, foundWord, paradigmId, idx, score);
+    }
+
+    private ParsedWord newParsedWord(String wordLower, String foundWord, short paradigmId, short idx, float score) {
+        String normalForm = dict.buildNormalForm(paradigmId, idx, foundWord);
+        Tag tag = dict.buildTag(paradigmId, idx);
+        WordsDAWG.WordForm wf = new WordsDAWG.WordForm(foundWord, paradigmId, idx);
+        return new DictionaryParsedWord(wordLower, tag, normalForm, foundWord, wf, score);
+    }
+
+    @Override
+    ParsedWord restoreParsedWord(String word, Tag tag, String normalForm, String foundWord,
+                                 short paradigmId, short idx, short count, int prefixLength, float score) {
+        WordsDAWG.WordForm wf = new WordsDAWG.WordForm(foundWord, paradigmId, idx);
+        return new DictionaryParsedWord(word, tag, normalForm, foundWord, wf, score);
+    }
+
     class DictionaryParsedWord extends AnalyzerParsedWord {
         private final WordsDAWG.WordForm wordForm;
 
@@ -82,6 +139,21 @@ public class DictionaryUnit extends AnalyzerUnit {
             return new DictionaryParsedWord(word, tag, normalForm, foundWord, wordForm, newScore);
         }
 
+        @Override
+        boolean isRestorable() {
+            return getClass() == DictionaryParsedWord.class && wordForm.word.equals(foundWord);
+        }
+
+        @Override
+        short getParadigmId() {
+            return wordForm.paradigmId;
+        }
+
+        @Override
+        short getIdx() {
+            return wordForm.idx;
+        }
+
         @Override
         public List<ParsedWord> getLexeme() {
             List<ParsedWord> lexeme = new ArrayList<>();
@@ -0,0 +1,99 @@
+package company.evo.jmorphy2.units;
+
+import java.io.IOException;
+import java.util.List;
+
+import company.evo.jmorphy2.ParseContext;
+import company.evo.jmorphy2.ParsedWord;
+import company.evo.jmorphy2.Tag;
+
+
+public class FuzzyDictionaryUnit extends AnalyzerUnit {
+    private final DictionaryUnit unit;
+    private final int maxEdits;
+    private final int limit;
+    private final int minWordLength;
+
+    private FuzzyDictionaryUnit(Tag.Storage tagStorage,
+                                DictionaryUnit unit,
+                                int maxEdits,
+                                int limit,
+                                int minWordLength,
+                                boolean terminate,
+                                float score) {
+        super(tagStorage, terminate, score);
+        this.unit = unit;
+        this.maxEdits = maxEdits;
+        this.limit = limit;
+        this.minWordLength = minWordLength;
+    }
+
+    public static class Builder extends AnalyzerUnit.Builder {
+        private static final int DEFAULT_MAX_EDITS = 1;
+        private static final int DEFAULT_LIMIT = 10;
+        private static final int DEFAULT_MIN_WORD_LENGTH = 4;
+
+        private final DictionaryUnit.Builder unit;
+        private int maxEdits = DEFAULT_MAX_EDITS;
+        private int limit = DEFAULT_LIMIT;
+        private int minWordLength = DEFAULT_MIN_WORD_LENGTH;
+
+        public Builder(DictionaryUnit.Builder unit,
+                       boolean terminate,
+                       float score) {
+            super(terminate, score);
+            this.unit = unit;
+        }
+
+        public Builder maxEdits(int maxEdits) {
+            this.maxEdits = maxEdits;
+            this.cachedUnit = null;
+            return this;
+        }
+
+        public Builder limit(int limit) {
+            this.limit = limit;
+            this.cachedUnit = null;
+            return this;
+        }
+
+        public Builder minWordLength(int minWordLength) {
+            this.minWordLength = minWordLength;
+            this.cachedUnit = null;
+            return this;
+        }
+
+        @Override
+        protected AnalyzerUnit newAnalyzerUnit(Tag.Storage tagStorage) throws IOException {
+            return new FuzzyDictionaryUnit(tagStorage,
+                                           (DictionaryUnit) unit.build(tagStorage),
+                                           maxEdits,
+                                           limit,
+                                           minWordLength,
+                                           terminate,
+                                           score);
+        }
+    }
+
+    @Override
+    public boolean dependsOnCase() {
+        return false;
+    }
+
+    @Override
+    public List<ParsedWord> parse(String word, String wordLower) {
+        if (wordLower.length() < minWordLength) {
+            return null;
+        }
+        return unit.parseFuzzy(wordLower, maxEdits, limit, score);
+    }
+
+    @Override
+    public boolean parse(ParseContext context) {
+        if (context.getWordLowerChars(0).length() < minWordLength) {
+            return false;
+        }
+        unit.parseFuzzy(context, maxEdits, limit, score);
+        return true;
+    }
+}
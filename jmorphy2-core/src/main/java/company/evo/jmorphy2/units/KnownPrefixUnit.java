@@ -1,17 +1,17 @@
 package company.evo.jmorphy2.units;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 import java.util.Set;
 
-import company.evo.jmorphy2.ParsedWord;
 import company.evo.jmorphy2.Tag;
 
 
 public class KnownPrefixUnit extends PrefixedUnit {
+    private static final int[] NO_PREFIXES = new int[0];
+
     private final int minReminder;
-    private final Set<String> prefixes;
+    private final PrefixTrie prefixes;
 
     private KnownPrefixUnit(
         Tag.Storage tagStorage,
@@ -23,7 +23,7 @@ public class KnownPrefixUnit extends PrefixedUnit {
     ) {
         super(tagStorage, unit, terminate, score);
         this.minReminder = minReminder;
-        this.prefixes = prefixes;
+        this.prefixes = new PrefixTrie(prefixes);
     }
 
     public static class Builder extends AnalyzerUnit.Builder {
@@ -60,15 +60,73 @@ public class KnownPrefixUnit extends PrefixedUnit {
     }
 
     @Override
-    public List<ParsedWord> parse(String word, String wordLower) {
-        List<ParsedWord> parseds = new ArrayList<>();
-        int wordLen = word.length();
-        for (int i = 1; wordLen - i >= minReminder; i++) {
-            String prefix = wordLower.substring(0, i);
-            if (prefixes.contains(prefix)) {
-                parseds.addAll(parseWithPrefix(word, wordLower, prefix));
+    protected int[] getPrefixLengths(int wordLength, CharSequence wordLower) {
+        int maxLength = Math.min(wordLength - minReminder, wordLower.length());
+        int[] prefixLengths = NO_PREFIXES;
+        int n = 0;
+        PrefixTrie.Node node = prefixes.root;
+        for (int i = 0; i < maxLength; i++) {
+            node = node.child(wordLower.charAt(i));
+            if (node == null) {
+                break;
+            }
+            if (node.terminal) {
+                if (n == prefixLengths.length) {
+                    prefixLengths = Arrays.copyOf(prefixLengths, n + 4);
+                }
+                prefixLengths[n++] = i + 1;
+            }
+        }
+        return n == prefixLengths.length ? prefixLengths : Arrays.copyOf(prefixLengths, n);
+    }
+
+    // Known prefixes are found by a single walk over the word
+    private static class PrefixTrie {
+        final Node root = new Node();
+
+        PrefixTrie(Set<String> prefixes) {
+            for (String prefix : prefixes) {
+                if (prefix.isEmpty()) {
+                    continue;
+                }
+                Node node = root;
+                for (int i = 0; i < prefix.length(); i++) {
+                    node = node.addChild(prefix.charAt(i));
+                }
+                node.terminal = true;
+            }
+        }
+
+        static class Node {
+            // Sorted labels of the children
+            private char[] labels = new char[0];
+            private Node[] children = new Node[0];
+            boolean terminal;
+
+            Node child(char c) {
+                int i = Arrays.binarySearch(labels, c);
+                return i >= 0 ? children[i] : null;
+            }
+
+            Node addChild(char c) {
+                int i = Arrays.binarySearch(labels, c);
+                if (i >= 0) {
+                    return children[i];
+                }
+                i = -i - 1;
+                int n = labels.length;
+                char[] newLabels = new char[n + 1];
+                Node[] newChildren = new Node[n + 1];
+                System.arraycopy(labels, 0, newLabels, 0, i);
+                System.arraycopy(children, 0, newChildren, 0, i);
+                System.arraycopy(labels, i, newLabels, i + 1, n - i);
+                System.arraycopy(children, i, newChildren, i + 1, n - i);
+                newLabels[i] = c;
+                newChildren[i] = new Node();
+                labels = newLabels;
+                children = newChildren;
+                return newChildren[i];
             }
         }
-        return parseds;
     }
 };
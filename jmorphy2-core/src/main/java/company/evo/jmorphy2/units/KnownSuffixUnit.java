@@ -4,10 +4,11 @@ import java.io.IOException;
 import java.lang.Math;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Iterator;
 
+import company.evo.jmorphy2.ParseContext;
 import company.evo.jmorphy2.ParsedWord;
 import company.evo.jmorphy2.Tag;
 import company.evo.jmorphy2.Dictionary;
@@ -19,6 +20,11 @@ public class KnownSuffixUnit extends AnalyzerUnit {
     private final Map<Character,String> charSubstitutes;
     private final int minWordLength;
     private final int maxSuffixLength;
+    // Characters which can be substituted by each other are hashed the same way
+    private final char[] substitutedChars;
+    private final char[] substitutedCharClasses;
+    // Filters of the prediction suffixes by paradigm prefixes
+    private final SuffixesFilter[] suffixesFilters;
 
     private KnownSuffixUnit(Tag.Storage tagStorage,
                             Dictionary dict,
@@ -32,6 +38,64 @@ public class KnownSuffixUnit extends AnalyzerUnit {
         this.charSubstitutes = charSubstitutes;
         this.minWordLength = minWordLength;
         this.maxSuffixLength = maxSuffixLength;
+
+        Map<Character,Character> charClasses = new HashMap<>();
+        if (charSubstitutes != null) {
+            for (Map.Entry<Character,String> entry : charSubstitutes.entrySet()) {
+                for (char c : entry.getValue().toCharArray()) {
+                    Character a = charClass(charClasses, entry.getKey());
+                    Character b = charClass(charClasses, c);
+                    if (!a.equals(b)) {
+                        charClasses.put(b, a);
+                    }
+                }
+            }
+        }
+        this.substitutedChars = new char[charClasses.size()];
+        this.substitutedCharClasses = new char[charClasses.size()];
+        int i = 0;
+        for (Character c : charClasses.keySet()) {
+            substitutedChars[i] = c;
+            substitutedCharClasses[i] = charClass(charClasses, c);
+            i++;
+        }
+
+        this.suffixesFilters = new SuffixesFilter[dict.getParadigmPrefixes().length];
+        for (int prefixId = 0; prefixId < suffixesFilters.length; prefixId++) {
+            suffixesFilters[prefixId] = new SuffixesFilter();
+            SuffixesFilter filter = suffixesFilters[prefixId];
+            dict.getPredictionSuffixes(prefixId).keys((suffix) -> {
+                int hash = 0;
+                for (int k = 1; k <= suffix.length(); k++) {
+                    hash = nextSuffixHash(hash, suffix.charAt(suffix.length() - k));
+                    if (k == suffix.length()) {
+                        filter.add(suffixHash(hash, k));
+                    }
+                }
+            });
+        }
+    }
+
+    private static Character charClass(Map<Character,Character> charClasses, Character c) {
+        Character parent;
+        while ((parent = charClasses.get(c)) != null && !parent.equals(c)) {
+            c = parent;
+        }
+        return c;
+    }
+
+    private int nextSuffixHash(int hash, char c) {
+        for (int i = 0; i < substitutedChars.length; i++) {
+            if (substitutedChars[i] == c) {
+                c = substitutedCharClasses[i];
+                break;
+            }
+        }
+        return 31 * hash + c;
+    }
+
+    private static int suffixHash(int hash, int length) {
+        return 31 * hash + length;
     }
 
     public static class Builder extends AnalyzerUnit.Builder {
@@ -80,49 +144,87 @@ public class KnownSuffixUnit extends AnalyzerUnit {
         }
     }
 
+    @Override
+    public boolean dependsOnCase() {
+        return false;
+    }
+
     @Override
     public List<ParsedWord> parse(String word, String wordLower) {
+        return predict(wordLower, new Prediction());
+    }
+
+    @Override
+    public boolean parse(ParseContext context) {
+        Prediction prediction = (Prediction) context.getUnitState(this, Prediction::new);
+        List<ParsedWord> parseds = predict(context.getWordLowerChars(0), prediction);
+        if (parseds == null) {
+            return false;
+        }
+        context.addAll(parseds);
+        return true;
+    }
+
+    // Buffers of the prediction are reused when it is kept by a context
+    private List<ParsedWord> predict(CharSequence wordLower, Prediction prediction) {
         int wordLen = wordLower.length();
         if (wordLen < minWordLength) {
             return null;
         }
+        prediction.reset(dict, wordLower);
 
-        List<ParsedWordWithPrefixId> parseds = new ArrayList<>();
         String[] paradigmPrefixes = dict.getParadigmPrefixes();
         int maxSuffixLength = Math.min(this.maxSuffixLength, wordLen);
-        int[] totalCounts = new int[paradigmPrefixes.length];
-        Arrays.fill(totalCounts, 1);
+        // Hashes of all the suffixes are calculated by a single pass from the end of the word,
+        // suffixes which are not in a filter are not looked up
+        int[] suffixHashes = prediction.suffixHashes(maxSuffixLength + 1);
+        int hash = 0;
+        for (int i = 1; i <= maxSuffixLength; i++) {
+            hash = nextSuffixHash(hash, wordLower.charAt(wordLen - i));
+            suffixHashes[i] = suffixHash(hash, i);
+        }
+
+        int[] totalCounts = prediction.totalCounts(paradigmPrefixes.length);
         for (int prefixId = 0; prefixId < paradigmPrefixes.length; prefixId++) {
-            String prefix = paradigmPrefixes[prefixId];
-            if (!wordLower.startsWith(prefix)) {
+            if (!prediction.wordStartsWith(paradigmPrefixes[prefixId])) {
                 continue;
             }
+            SuffixesDAWG predictionSuffixes = dict.getPredictionSuffixes(prefixId);
+            SuffixesFilter filter = suffixesFilters[prefixId];
             for (int i = maxSuffixLength; i >= 1; i--) {
-                String wordStart = wordLower.substring(0, wordLen - i);
-                String wordEnd = wordLower.substring(wordLen - i);
-                SuffixesDAWG predictionSuffixes = dict.getPredictionSuffixes(prefixId);
-                for (SuffixesDAWG.SuffixForm sf : predictionSuffixes.similarSuffixes(wordEnd, charSubstitutes)) {
-                    totalCounts[prefixId] += sf.count;
-                    Tag tag = dict.buildTag(sf.paradigmId, sf.idx);
-                    if (!tag.isProductive()) {
-                        continue;
-                    }
-                    String normalForm = dict.buildNormalForm(sf.paradigmId, sf.idx, wordStart + sf.word);
-                    float score = this.score * sf.count;
-                    parseds.add(new ParsedWordWithPrefixId(new KnownSuffixParsedWord(wordStart + sf.word, tag, normalForm, sf.word, sf, score), prefixId));
+                if (filter.mayContain(suffixHashes[i])) {
+                    CharSequence wordEnd = prediction.wordEnd(prefixId, wordLen - i);
+                    predictionSuffixes.similarSuffixes(wordEnd, charSubstitutes, prediction);
                 }
 
-                if (parseds.size() > 0) {
+                if (prediction.size > 0) {
                     break;
                 }
             }
         }
-        
-        List<ParsedWord> normParseds = new ArrayList<>();
-        for (ParsedWordWithPrefixId p : parseds) {
-            normParseds.add(p.parsedWord.rescore(p.parsedWord.score / totalCounts[p.prefixId]));
+
+        // Words and normal forms are only built for the predicted candidates
+        List<ParsedWord> parseds = new ArrayList<>(prediction.size);
+        for (int c = 0; c < prediction.size; c++) {
+            String suffix = prediction.suffix(c);
+            String predictedWord = prediction.wordStart(c) + suffix;
+            short count = prediction.counts[c];
+            short paradigmId = prediction.paradigmIds[c];
+            short idx = prediction.idxs[c];
+            String normalForm = dict.buildNormalForm(paradigmId, idx, predictedWord);
+            float score = this.score * count / totalCounts[prediction.prefixIds[c]];
+            SuffixesDAWG.SuffixForm sf = new SuffixesDAWG.SuffixForm(suffix, count, paradigmId, idx);
+            parseds.add(new KnownSuffixParsedWord(predictedWord, prediction.tags[c], normalForm, suffix, sf, score));
         }
-        return normParseds;
+        prediction.release();
+        return parseds;
+    }
+
+    @Override
+    ParsedWord restoreParsedWord(String word, Tag tag, String normalForm, String foundWord,
+                                 short paradigmId, short idx, short count, int prefixLength, float score) {
+        SuffixesDAWG.SuffixForm sf = new SuffixesDAWG.SuffixForm(foundWord, count, paradigmId, idx);
+        return new KnownSuffixParsedWord(word, tag, normalForm, foundWord, sf, score);
     }
 
     class KnownSuffixParsedWord extends AnalyzerParsedWord {
@@ -143,6 +245,26 @@ public class KnownSuffixUnit extends AnalyzerUnit {
             return new KnownSuffixParsedWord(word, tag, normalForm, foundWord, suffixForm, newScore);
         }
 
+        @Override
+        boolean isRestorable() {
+            return getClass() == KnownSuffixParsedWord.class && suffixForm.word.equals(foundWord);
+        }
+
+        @Override
+        short getParadigmId() {
+            return suffixForm.paradigmId;
+        }
+
+        @Override
+        short getIdx() {
+            return suffixForm.idx;
+        }
+
+        @Override
+        short getCount() {
+            return suffixForm.count;
+        }
+
         @Override
         public List<ParsedWord> getLexeme() {
             List<ParsedWord> lexeme = new ArrayList<>();
@@ -167,13 +289,196 @@ public class KnownSuffixUnit extends AnalyzerUnit {
         }
     }
 
-    private static class ParsedWordWithPrefixId {
-        public final ParsedWord parsedWord;
-        public final int prefixId;
+    // Word and productive candidates of the current prediction.
+    // Suffixes found for the current prefix and word start are collected by accept
+    private static class Prediction extends SuffixesDAWG.RawSuffixFormConsumer {
+        private Dictionary dict;
+        private char[] word = new char[16];
+        private int wordLength;
+        private final WordEnd wordEnd = new WordEnd();
+        private int prefixId;
+        private int wordStartLength;
+        private int[] suffixHashes = new int[8];
+        private int[] totalCounts = new int[4];
+
+        private int size;
+        private int[] prefixIds = new int[8];
+        private int[] wordStartLengths = new int[8];
+        private Tag[] tags = new Tag[8];
+        private short[] counts = new short[8];
+        private short[] paradigmIds = new short[8];
+        private short[] idxs = new short[8];
+        private char[] suffixes = new char[64];
+        private int suffixesSize;
+        private int[] suffixOffsets = new int[8];
+        private int[] suffixLengths = new int[8];
 
-        public ParsedWordWithPrefixId(ParsedWord parsedWord, int prefixId) {
-            this.parsedWord = parsedWord;
+        void reset(Dictionary dict, CharSequence wordLower) {
+            this.dict = dict;
+            wordLength = wordLower.length();
+            if (word.length < wordLength) {
+                word = new char[wordLength];
+            }
+            for (int i = 0; i < wordLength; i++) {
+                word[i] = wordLower.charAt(i);
+            }
+            size = 0;
+            suffixesSize = 0;
+        }
+
+        // A context keeps the prediction, so it must not keep the dictionary
+        void release() {
+            dict = null;
+            Arrays.fill(tags, 0, size, null);
+        }
+
+        int[] suffixHashes(int length) {
+            if (suffixHashes.length < length) {
+                suffixHashes = new int[length];
+            }
+            return suffixHashes;
+        }
+
+        int[] totalCounts(int length) {
+            if (totalCounts.length < length) {
+                totalCounts = new int[length];
+            }
+            Arrays.fill(totalCounts, 0, length, 1);
+            return totalCounts;
+        }
+
+        boolean wordStartsWith(String prefix) {
+            if (prefix.length() > wordLength) {
+                return false;
+            }
+            for (int i = 0; i < prefix.length(); i++) {
+                if (word[i] != prefix.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        CharSequence wordEnd(int prefixId, int wordStartLength) {
             this.prefixId = prefixId;
+            this.wordStartLength = wordStartLength;
+            return wordEnd;
+        }
+
+        String wordStart(int c) {
+            return new String(word, 0, wordStartLengths[c]);
+        }
+
+        String suffix(int c) {
+            return new String(suffixes, suffixOffsets[c], suffixLengths[c]);
+        }
+
+        @Override
+        public void accept(char[] suffix, int suffixLength, short count, short paradigmId, short idx) {
+            totalCounts[prefixId] += count;
+            Tag tag = dict.buildTag(paradigmId, idx);
+            if (!tag.isProductive()) {
+                return;
+            }
+            if (size == tags.length) {
+                int newLength = size * 2;
+                prefixIds = Arrays.copyOf(prefixIds, newLength);
+                wordStartLengths = Arrays.copyOf(wordStartLengths, newLength);
+                tags = Arrays.copyOf(tags, newLength);
+                counts = Arrays.copyOf(counts, newLength);
+                paradigmIds = Arrays.copyOf(paradigmIds, newLength);
+                idxs = Arrays.copyOf(idxs, newLength);
+                suffixOffsets = Arrays.copyOf(suffixOffsets, newLength);
+                suffixLengths = Arrays.copyOf(suffixLengths, newLength);
+            }
+            if (suffixes.length - suffixesSize < suffixLength) {
+                suffixes = Arrays.copyOf(suffixes, Math.max(suffixes.length * 2, suffixesSize + suffixLength));
+            }
+            prefixIds[size] = prefixId;
+            wordStartLengths[size] = wordStartLength;
+            tags[size] = tag;
+            counts[size] = count;
+            paradigmIds[size] = paradigmId;
+            idxs[size] = idx;
+            suffixOffsets[size] = suffixesSize;
+            suffixLengths[size] = suffixLength;
+            System.arraycopy(suffix, 0, suffixes, suffixesSize, suffixLength);
+            suffixesSize += suffixLength;
+            size++;
+        }
+
+        private class WordEnd implements CharSequence {
+            @Override
+            public int length() {
+                return wordLength - wordStartLength;
+            }
+
+            @Override
+            public char charAt(int index) {
+                return word[wordStartLength + index];
+            }
+
+            @Override
+            public CharSequence subSequence(int start, int end) {
+                return new String(word, wordStartLength + start, end - start);
+            }
+
+            @Override
+            public String toString() {
+                return new String(word, wordStartLength, wordLength - wordStartLength);
+            }
+        }
+    }
+
+    // Open addressing set of the suffix hashes, false positives are possible
+    private static class SuffixesFilter {
+        private int[] hashes = new int[16];
+        private int size;
+
+        void add(int hash) {
+            hash = nonZero(hash);
+            if (size * 2 >= hashes.length) {
+                int[] oldHashes = hashes;
+                hashes = new int[oldHashes.length * 2];
+                size = 0;
+                for (int h : oldHashes) {
+                    if (h != 0) {
+                        add(h);
+                    }
+                }
+            }
+            int mask = hashes.length - 1;
+            int slot = mix(hash) & mask;
+            while (hashes[slot] != 0) {
+                if (hashes[slot] == hash) {
+                    return;
+                }
+                slot = (slot + 1) & mask;
+            }
+            hashes[slot] = hash;
+            size++;
+        }
+
+        boolean mayContain(int hash) {
+            hash = nonZero(hash);
+            int mask = hashes.length - 1;
+            int slot = mix(hash) & mask;
+            while (hashes[slot] != 0) {
+                if (hashes[slot] == hash) {
+                    return true;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return false;
+        }
+
+        private static int nonZero(int hash) {
+            return hash != 0 ? hash : 1;
+        }
+
+        private static int mix(int hash) {
+            hash *= 0x9E3779B9;
+            return hash ^ (hash >>> 16);
         }
     }
 }
@@ -2,6 +2,7 @@ package company.evo.jmorphy2.units;
 
 import java.util.List;
 
+import company.evo.jmorphy2.CharClasses;
 import company.evo.jmorphy2.Tag;
 
 
@@ -12,6 +13,12 @@ public class LatinUnit extends RegexUnit {
         super(tagStorage, LATIN_REGEX, "LATN", terminate, score);
     }
 
+    @Override
+    public boolean accepts(int charClasses) {
+        return charClasses != 0 &&
+            (charClasses & ~(CharClasses.LATIN | CharClasses.DIGIT | CharClasses.PUNCTUATION)) == 0;
+    }
+
     public static class Builder extends AnalyzerUnit.Builder {
         public Builder(boolean terminate, float score) {
             super(terminate, score);
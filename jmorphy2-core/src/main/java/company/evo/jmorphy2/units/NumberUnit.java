@@ -3,13 +3,19 @@ package company.evo.jmorphy2.units;
 import java.util.ArrayList;
 import java.util.List;
 
+import company.evo.jmorphy2.CharClasses;
 import company.evo.jmorphy2.ParsedWord;
 import company.evo.jmorphy2.Tag;
 
 
 public class NumberUnit extends AnalyzerUnit {
+    private final Tag intTag;
+    private final Tag realTag;
+
     private NumberUnit(Tag.Storage tagStorage, boolean terminate, float score) {
         super(tagStorage, terminate, score);
+        this.intTag = tagStorage.getTag("NUMB,intg");
+        this.realTag = tagStorage.getTag("NUMB,real");
     }
 
     public static class Builder extends AnalyzerUnit.Builder {
@@ -28,19 +34,20 @@ public class NumberUnit extends AnalyzerUnit {
         }
     }
 
+    @Override
+    public boolean accepts(int charClasses) {
+        return (charClasses & CharClasses.CYRILLIC) == 0 &&
+            (charClasses & ~CharClasses.PUNCTUATION) != 0;
+    }
+
     @Override
     public List<ParsedWord> parse(String word, String wordLower) {
         Tag tag = null;
-        try {
-            // First try to parse as an integer
-            float number = Integer.parseInt(word);
-            tag = tagStorage.getTag("NUMB,intg");
-        } catch (NumberFormatException erInt) {
-            try {
-                // then as a float
-                float number = Float.parseFloat(word);
-                tag = tagStorage.getTag("NUMB,real");
-            } catch (NumberFormatException ignored) {}
+        // First try to parse as an integer then as a float
+        if (isInteger(word)) {
+            tag = intTag;
+        } else if (isFloat(word)) {
+            tag = realTag;
         }
 
         if (tag != null) {
@@ -50,4 +57,104 @@ public class NumberUnit extends AnalyzerUnit {
         }
         return null;
     }
+
+    // Accepts the same strings as Integer.parseInt without throwing exceptions
+    static boolean isInteger(String s) {
+        int length = s.length();
+        if (length == 0) {
+            return false;
+        }
+        int i = 0;
+        int limit = -Integer.MAX_VALUE;
+        char first = s.charAt(0);
+        if (first == '-' || first == '+') {
+            if (length == 1) {
+                return false;
+            }
+            if (first == '-') {
+                limit = Integer.MIN_VALUE;
+            }
+            i++;
+        }
+        int multmin = limit / 10;
+        int result = 0;
+        for (; i < length; i++) {
+            int digit = Character.digit(s.charAt(i), 10);
+            if (digit < 0 || result < multmin) {
+                return false;
+            }
+            result *= 10;
+            if (result < limit + digit) {
+                return false;
+            }
+            result -= digit;
+        }
+        return true;
+    }
+
+    // Accepts the same strings as Float.parseFloat without throwing exceptions
+    static boolean isFloat(String s) {
+        s = s.trim();
+        int length = s.length();
+        int i = 0;
+        if (i < length && (s.charAt(i) == '-' || s.charAt(i) == '+')) {
+            i++;
+        }
+        if (i == length) {
+            return false;
+        }
+        char c = s.charAt(i);
+        if (c == 'N') {
+            return s.startsWith("NaN", i) && i + 3 == length;
+        }
+        if (c == 'I') {
+            return s.startsWith("Infinity", i) && i + 8 == length;
+        }
+        boolean hex = c == '0' && i + 1 < length && (s.charAt(i + 1) == 'x' || s.charAt(i + 1) == 'X');
+        if (hex) {
+            i += 2;
+        }
+
+        int digits = 0;
+        boolean point = false;
+        for (; i < length; i++) {
+            c = s.charAt(i);
+            if (c == '.' && !point) {
+                point = true;
+            } else if (hex ? Character.digit(c, 16) >= 0 && c < 128 : c >= '0' && c <= '9') {
+                digits++;
+            } else {
+                break;
+            }
+        }
+        if (digits == 0) {
+            return false;
+        }
+
+        // Exponent is mandatory for hexadecimal numbers
+        boolean exponent = i < length &&
+            (hex ? s.charAt(i) == 'p' || s.charAt(i) == 'P' : s.charAt(i) == 'e' || s.charAt(i) == 'E');
+        if (hex && !exponent) {
+            return false;
+        }
+        if (exponent) {
+            i++;
+            if (i < length && (s.charAt(i) == '-' || s.charAt(i) == '+')) {
+                i++;
+            }
+            int expDigits = 0;
+            for (; i < length && s.charAt(i) >= '0' && s.charAt(i) <= '9'; i++) {
+                expDigits++;
+            }
+            if (expDigits == 0) {
+                return false;
+            }
+        }
+
+        if (i == length) {
+            return true;
+        }
+        c = s.charAt(i);
+        return i == length - 1 && (c == 'f' || c == 'F' || c == 'd' || c == 'D');
+    }
 }
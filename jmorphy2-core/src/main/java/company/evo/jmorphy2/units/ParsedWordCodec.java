@@ -0,0 +1,263 @@
+package company.evo.jmorphy2.units;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import company.evo.jmorphy2.ParsedWord;
+import company.evo.jmorphy2.Tag;
+
+
+// Writes parse results of the units in a compact binary form and restores them,
+// so the results can be kept outside of the Java heap, see OffHeapParseCache.
+// A parsed word is written as the index of its unit, tag id, score, paradigm id,
+// form index, suffix count and prefix length followed by the word, normal form
+// and found word when they differ from the lowercased word or the previous normal form.
+// Strings of ASCII and Cyrillic chars are written with a byte per char, other strings as chars.
+// Results are valid only for the same units and tag storage
+public final class ParsedWordCodec {
+    private static final int MAX_PARSED_WORDS = 255;
+    private static final int MAX_STRING_LENGTH = Short.MAX_VALUE;
+    // unit, flags, tag id, score, paradigm id, form index, count, prefix length
+    private static final int PARSED_WORD_SIZE = 1 + 1 + 4 + 4 + 2 + 2 + 2 + 2;
+
+    private static final int WORD_IS_KEY = 1;
+    private static final int NORMAL_FORM_IS_WORD = 1 << 1;
+    private static final int FOUND_WORD_IS_WORD = 1 << 2;
+    private static final int NORMAL_FORM_IS_PREVIOUS = 1 << 3;
+
+    // Set in the length of a string written with a byte per char
+    private static final int COMPACT_STRING = 0x8000;
+    private static final char CYRILLIC_START = '\u0400';
+    private static final char CYRILLIC_END = '\u0480';
+
+    private final Tag.Storage tagStorage;
+    private final AnalyzerUnit[] units;
+
+    public ParsedWordCodec(Tag.Storage tagStorage, List<AnalyzerUnit> units) {
+        if (units.size() > 255) {
+            throw new IllegalArgumentException("Too many units: " + units.size());
+        }
+        this.tagStorage = tagStorage;
+        this.units = units.toArray(new AnalyzerUnit[0]);
+    }
+
+    // Returns -1 when some of the parsed words cannot be restored
+    public int encodedLength(String wordLower, List<ParsedWord> parsedWords) {
+        if (parsedWords.size() > MAX_PARSED_WORDS) {
+            return -1;
+        }
+        int length = 1;
+        String previousNormalForm = null;
+        for (ParsedWord parsed : parsedWords) {
+            if (unitIndex(parsed) < 0) {
+                return -1;
+            }
+            length += PARSED_WORD_SIZE;
+            int flags = flags(wordLower, parsed, previousNormalForm);
+            previousNormalForm = parsed.normalForm;
+            if ((flags & WORD_IS_KEY) == 0) {
+                length += stringLength(parsed.word);
+            }
+            if ((flags & (NORMAL_FORM_IS_WORD | NORMAL_FORM_IS_PREVIOUS)) == 0) {
+                length += stringLength(parsed.normalForm);
+            }
+            if ((flags & FOUND_WORD_IS_WORD) == 0) {
+                length += stringLength(parsed.foundWord);
+            }
+            if (length < 0) {
+                return -1;
+            }
+        }
+        return length;
+    }
+
+    // The buffer must have encodedLength bytes left after the offset,
+    // returns the offset after the written results
+    public int write(String wordLower, List<ParsedWord> parsedWords, ByteBuffer buffer, int offset) {
+        buffer.put(offset++, (byte) parsedWords.size());
+        String previousNormalForm = null;
+        for (ParsedWord parsed : parsedWords) {
+            AnalyzerUnit.AnalyzerParsedWord p = (AnalyzerUnit.AnalyzerParsedWord) parsed;
+            int flags = flags(wordLower, parsed, previousNormalForm);
+            previousNormalForm = parsed.normalForm;
+            buffer.put(offset, (byte) unitIndex(parsed));
+            buffer.put(offset + 1, (byte) flags);
+            buffer.putInt(offset + 2, parsed.tag.getId());
+            buffer.putFloat(offset + 6, parsed.score);
+            buffer.putShort(offset + 10, p.getParadigmId());
+            buffer.putShort(offset + 12, p.getIdx());
+            buffer.putShort(offset + 14, p.getCount());
+            buffer.putShort(offset + 16, (short) p.getPrefixLength());
+            offset += PARSED_WORD_SIZE;
+            if ((flags & WORD_IS_KEY) == 0) {
+                offset = writeString(parsed.word, buffer, offset);
+            }
+            if ((flags & (NORMAL_FORM_IS_WORD | NORMAL_FORM_IS_PREVIOUS)) == 0) {
+                offset = writeString(parsed.normalForm, buffer, offset);
+            }
+            if ((flags & FOUND_WORD_IS_WORD) == 0) {
+                offset = writeString(parsed.foundWord, buffer, offset);
+            }
+        }
+        return offset;
+    }
+
+    // Returns null when the results were written for other units or tags
+    public List<ParsedWord> read(String wordLower, ByteBuffer buffer, int offset) {
+        int size = buffer.get(offset++) & 0xff;
+        List<ParsedWord> parsedWords = new ArrayList<>(size);
+        String previousNormalForm = null;
+        for (int i = 0; i < size; i++) {
+            int unitIndex = buffer.get(offset) & 0xff;
+            int flags = buffer.get(offset + 1);
+            Tag tag = tagStorage.getTag(buffer.getInt(offset + 2));
+            float score = buffer.getFloat(offset + 6);
+            short paradigmId = buffer.getShort(offset + 10);
+            short idx = buffer.getShort(offset + 12);
+            short count = buffer.getShort(offset + 14);
+            int prefixLength = buffer.getShort(offset + 16);
+            offset += PARSED_WORD_SIZE;
+            if (unitIndex >= units.length || tag == null) {
+                return null;
+            }
+            String word = wordLower;
+            if ((flags & WORD_IS_KEY) == 0) {
+                word = readString(buffer, offset);
+                offset += stringLength(word);
+            }
+            String normalForm = word;
+            if ((flags & NORMAL_FORM_IS_PREVIOUS) != 0) {
+                normalForm = previousNormalForm;
+            } else if ((flags & NORMAL_FORM_IS_WORD) == 0) {
+                normalForm = readString(buffer, offset);
+                offset += stringLength(normalForm);
+            }
+            previousNormalForm = normalForm;
+            String foundWord = word;
+            if ((flags & FOUND_WORD_IS_WORD) == 0) {
+                foundWord = readString(buffer, offset);
+                offset += stringLength(foundWord);
+            }
+            parsedWords.add(units[unitIndex].restoreParsedWord(
+                word, tag, normalForm, foundWord, paradigmId, idx, count, prefixLength, score
+            ));
+        }
+        return parsedWords;
+    }
+
+    private int unitIndex(ParsedWord parsed) {
+        if (!(parsed instanceof AnalyzerUnit.AnalyzerParsedWord)) {
+            return -1;
+        }
+        AnalyzerUnit.AnalyzerParsedWord p = (AnalyzerUnit.AnalyzerParsedWord) parsed;
+        if (!p.isRestorable() || tagStorage.getTag(p.tag.getId()) != p.tag) {
+            return -1;
+        }
+        AnalyzerUnit unit = p.getUnit();
+        for (int i = 0; i < units.length; i++) {
+            if (units[i] == unit) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int flags(String wordLower, ParsedWord parsed, String previousNormalForm) {
+        int flags = 0;
+        if (parsed.word.equals(wordLower)) {
+            flags |= WORD_IS_KEY;
+        }
+        if (parsed.normalForm.equals(parsed.word)) {
+            flags |= NORMAL_FORM_IS_WORD;
+        } else if (parsed.normalForm.equals(previousNormalForm)) {
+            flags |= NORMAL_FORM_IS_PREVIOUS;
+        }
+        if (parsed.foundWord.equals(parsed.word)) {
+            flags |= FOUND_WORD_IS_WORD;
+        }
+        return flags;
+    }
+
+    // Number of bytes of the written string, negative when the string is too long
+    public static int stringLength(String s) {
+        if (s.length() > MAX_STRING_LENGTH) {
+            return Integer.MIN_VALUE;
+        }
+        return 2 + (isCompact(s) ? 1 : 2) * s.length();
+    }
+
+    // Returns the offset after the written string
+    public static int writeString(String s, ByteBuffer buffer, int offset) {
+        if (isCompact(s)) {
+            buffer.putShort(offset, (short) (s.length() | COMPACT_STRING));
+            offset += 2;
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                buffer.put(offset++, (byte) (c < 0x80 ? c : c - CYRILLIC_START + 0x80));
+            }
+            return offset;
+        }
+        buffer.putShort(offset, (short) s.length());
+        offset += 2;
+        for (int i = 0; i < s.length(); i++) {
+            buffer.putChar(offset, s.charAt(i));
+            offset += 2;
+        }
+        return offset;
+    }
+
+    public static String readString(ByteBuffer buffer, int offset) {
+        int header = buffer.getShort(offset) & 0xffff;
+        char[] chars = new char[header & ~COMPACT_STRING];
+        offset += 2;
+        if ((header & COMPACT_STRING) != 0) {
+            for (int i = 0; i < chars.length; i++) {
+                chars[i] = compactChar(buffer.get(offset + i));
+            }
+        } else {
+            for (int i = 0; i < chars.length; i++) {
+                chars[i] = buffer.getChar(offset + 2 * i);
+            }
+        }
+        return new String(chars);
+    }
+
+    // Compares the written string without decoding it
+    public static boolean stringEquals(ByteBuffer buffer, int offset, String s) {
+        int header = buffer.getShort(offset) & 0xffff;
+        if ((header & ~COMPACT_STRING) != s.length()) {
+            return false;
+        }
+        offset += 2;
+        if ((header & COMPACT_STRING) != 0) {
+            for (int i = 0; i < s.length(); i++) {
+                if (compactChar(buffer.get(offset + i)) != s.charAt(i)) {
+                    return false;
+                }
+            }
+        } else {
+            for (int i = 0; i < s.length(); i++) {
+                if (buffer.getChar(offset + 2 * i) != s.charAt(i)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static boolean isCompact(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c >= 0x80 && (c < CYRILLIC_START || c >= CYRILLIC_END)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static char compactChar(byte b) {
+        int c = b & 0xff;
+        return (char) (c < 0x80 ? c : c - 0x80 + CYRILLIC_START);
+    }
+}
@@ -3,6 +3,7 @@ package company.evo.jmorphy2.units;
 import java.util.ArrayList;
 import java.util.List;
 
+import company.evo.jmorphy2.ParseContext;
 import company.evo.jmorphy2.ParsedWord;
 import company.evo.jmorphy2.Tag;
 
@@ -15,6 +16,35 @@ abstract class PrefixedUnit extends AnalyzerUnit {
         this.unit = unit;
     }
 
+    // Lengths of the prefixes of the word to try in order,
+    // the returned array must not be modified
+    protected abstract int[] getPrefixLengths(int wordLength, CharSequence wordLower);
+
+    @Override
+    public boolean dependsOnCase() {
+        return unit.dependsOnCase();
+    }
+
+    @Override
+    public List<ParsedWord> parse(String word, String wordLower) {
+        List<ParsedWord> parseds = new ArrayList<>();
+        for (int prefixLength : getPrefixLengths(word.length(), wordLower)) {
+            parseds.addAll(parseWithPrefix(word, wordLower, wordLower.substring(0, prefixLength)));
+        }
+        return parseds;
+    }
+
+    @Override
+    public boolean parse(ParseContext context) {
+        if (!(unit instanceof DictionaryUnit)) {
+            return super.parse(context);
+        }
+        for (int prefixLength : getPrefixLengths(context.getWordLength(), context.getWordLowerChars(0))) {
+            ((DictionaryUnit) unit).parse(context, this, prefixLength, score);
+        }
+        return true;
+    }
+
     protected List<ParsedWord> parseWithPrefix(String word, String wordLower, String prefix) {
         List<ParsedWord> parseds = new ArrayList<>();
         int prefixLen = prefix.length();
@@ -27,6 +57,16 @@ abstract class PrefixedUnit extends AnalyzerUnit {
         return parseds;
     }
 
+    @Override
+    ParsedWord restoreParsedWord(String word, Tag tag, String normalForm, String foundWord,
+                                 short paradigmId, short idx, short count, int prefixLength, float score) {
+        ParsedWord parsed = unit.restoreParsedWord(
+            word.substring(prefixLength), tag, normalForm.substring(prefixLength), foundWord,
+            paradigmId, idx, count, 0, unit.score
+        );
+        return new PrefixedParsedWord(word.substring(0, prefixLength), parsed, score);
+    }
+
     class PrefixedParsedWord extends AnalyzerParsedWord {
         private final String prefix;
         private final ParsedWord parsedWord;
@@ -42,6 +82,36 @@ abstract class PrefixedUnit extends AnalyzerUnit {
             return new PrefixedParsedWord(prefix, parsedWord, newScore);
         }
 
+        // The prefixed word is restored by the wrapped unit
+        @Override
+        boolean isRestorable() {
+            if (getClass() != PrefixedParsedWord.class || !(parsedWord instanceof AnalyzerParsedWord)) {
+                return false;
+            }
+            AnalyzerParsedWord p = (AnalyzerParsedWord) parsedWord;
+            return p.getUnit() == unit && p.isRestorable() && p.getPrefixLength() == 0;
+        }
+
+        @Override
+        short getParadigmId() {
+            return ((AnalyzerParsedWord) parsedWord).getParadigmId();
+        }
+
+        @Override
+        short getIdx() {
+            return ((AnalyzerParsedWord) parsedWord).getIdx();
+        }
+
+        @Override
+        short getCount() {
+            return ((AnalyzerParsedWord) parsedWord).getCount();
+        }
+
+        @Override
+        int getPrefixLength() {
+            return prefix.length();
+        }
+
         @Override
         public List<ParsedWord> getLexeme() {
             List<ParsedWord> lexeme = new ArrayList<>();
@@ -2,6 +2,7 @@ package company.evo.jmorphy2.units;
 
 import java.util.List;
 
+import company.evo.jmorphy2.CharClasses;
 import company.evo.jmorphy2.Tag;
 
 
@@ -12,6 +13,11 @@ public class PunctuationUnit extends RegexUnit {
         super(tagStorage, PUNCTUATION_REGEX, "PNCT", terminate, score);
     }
 
+    @Override
+    public boolean accepts(int charClasses) {
+        return charClasses == CharClasses.PUNCTUATION;
+    }
+
     public static class Builder extends AnalyzerUnit.Builder {
         public Builder(boolean terminate, float score) {
             super(terminate, score);
@@ -11,18 +11,20 @@ import company.evo.jmorphy2.Tag;
 public class RegexUnit extends AnalyzerUnit {
     protected final Pattern pattern;
     protected final String tagString;
+    protected final Tag tag;
 
     public RegexUnit(Tag.Storage tagStorage, String regex, String tagString, boolean terminate, float score) {
         super(tagStorage, terminate, score);
         this.pattern = Pattern.compile(regex);
         this.tagString = tagString;
+        this.tag = tagStorage.getTag(tagString);
     }
 
     @Override
     public List<ParsedWord> parse(String word, String wordLower) {
         if (pattern.matcher(word).matches()) {
             List<ParsedWord> parseds = new ArrayList<>();
-            parseds.add(new AnalyzerParsedWord(word, tagStorage.getTag(tagString), word, word, score));
+            parseds.add(new AnalyzerParsedWord(word, tag, word, word, score));
             return parseds;
         }
         return null;
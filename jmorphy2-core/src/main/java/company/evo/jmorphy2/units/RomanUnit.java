@@ -2,6 +2,7 @@ package company.evo.jmorphy2.units;
 
 import java.util.List;
 
+import company.evo.jmorphy2.CharClasses;
 import company.evo.jmorphy2.Tag;
 
 
@@ -16,6 +17,11 @@ public class RomanUnit extends RegexUnit {
         super(tagStorage, ROMAN_REGEX, "ROMN", terminate, score);
     }
 
+    @Override
+    public boolean accepts(int charClasses) {
+        return (charClasses & ~CharClasses.LATIN) == 0;
+    }
+
     public static class Builder extends AnalyzerUnit.Builder {
         public Builder(boolean terminate, float score) {
             super(terminate, score);
@@ -1,16 +1,15 @@
 package company.evo.jmorphy2.units;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
 
-import company.evo.jmorphy2.ParsedWord;
 import company.evo.jmorphy2.Tag;
 
 
 public class UnknownPrefixUnit extends PrefixedUnit {
     private final int maxPrefixLength;
     private final int minReminder;
+    // Prefix lengths by the number of prefixes
+    private final int[][] prefixLengths;
 
     private UnknownPrefixUnit(Tag.Storage tagStorage,
                               AnalyzerUnit unit,
@@ -21,6 +20,13 @@ public class UnknownPrefixUnit extends PrefixedUnit {
         super(tagStorage, unit, terminate, score);
         this.maxPrefixLength = maxPrefixLength;
         this.minReminder = minReminder;
+        this.prefixLengths = new int[Math.max(maxPrefixLength, 0) + 1][];
+        for (int n = 0; n < prefixLengths.length; n++) {
+            prefixLengths[n] = new int[n];
+            for (int i = 0; i < n; i++) {
+                prefixLengths[n][i] = i + 1;
+            }
+        }
     }
 
     public static class Builder extends AnalyzerUnit.Builder {
@@ -62,13 +68,8 @@ public class UnknownPrefixUnit extends PrefixedUnit {
     }
 
     @Override
-    public List<ParsedWord> parse(String word, String wordLower) {
-        List<ParsedWord> parseds = new ArrayList<>();
-        int wordLen = word.length();
-        for (int i = 1; i <= maxPrefixLength && wordLen - i >= minReminder; i++) {
-            String prefix = wordLower.substring(0, i);
-            parseds.addAll(parseWithPrefix(word, wordLower, prefix));
-        }
-        return parseds;
+    protected int[] getPrefixLengths(int wordLength, CharSequence wordLower) {
+        int n = Math.min(maxPrefixLength, wordLength - minReminder);
+        return prefixLengths[Math.max(n, 0)];
     }
 }
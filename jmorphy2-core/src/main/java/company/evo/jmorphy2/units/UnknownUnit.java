@@ -7,8 +7,11 @@ import company.evo.jmorphy2.Tag;
 
 
 public class UnknownUnit extends AnalyzerUnit {
+    private final Tag unknownTag;
+
     private UnknownUnit(Tag.Storage tagStorage, boolean terminate, float score) {
         super(tagStorage, terminate, score);
+        this.unknownTag = tagStorage.getTag("UNKN");
     }
 
     public static class Builder extends AnalyzerUnit.Builder {
@@ -27,7 +30,7 @@ public class UnknownUnit extends AnalyzerUnit {
     @Override
     public List<ParsedWord> parse(String word, String wordLower) {
         return List.of(
-            new AnalyzerParsedWord(word, tagStorage.getTag("UNKN"), word, word, score)
+            new AnalyzerParsedWord(word, unknownTag, word, word, score)
         );
     }
 }
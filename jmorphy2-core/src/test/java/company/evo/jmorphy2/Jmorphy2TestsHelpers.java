@@ -17,4 +17,10 @@ public class Jmorphy2TestsHelpers {
             .charSubstitutes(replaceChars)
             .build();
     }
+
+    public static Dictionary newDictionary(String lang) throws IOException {
+        String dictResourcePath = String.format("/company/evo/jmorphy2/%s/pymorphy2_dicts", lang);
+        return new Dictionary.Builder(new ResourceFileLoader(dictResourcePath))
+            .build(new Tag.Storage());
+    }
 }
@@ -7,11 +7,38 @@ import org.junit.runners.JUnit4;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.lang.ref.WeakReference;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import company.evo.jmorphy2.units.AnalyzerUnit;
+import company.evo.jmorphy2.units.DictionaryUnit;
+import company.evo.jmorphy2.units.FuzzyDictionaryUnit;
+import company.evo.jmorphy2.units.KnownPrefixUnit;
+import company.evo.jmorphy2.units.KnownSuffixUnit;
+import company.evo.jmorphy2.units.UnknownPrefixUnit;
 
 
 @RunWith(JUnit4.class)
@@ -39,6 +66,9 @@ public class MorphAnalyzerRUTest {
                       parseds);
         assertEquals(morph.getGrammeme("POST"), morph.getGrammeme("ADJF").getRoot());
         assertEquals(morph.getGrammeme("ADJF"), tag.POS);
+        assertEquals(morph.getGrammeme("gent"), tag.getGrammemeFor(morph.getGrammeme("CAse")));
+        assertTrue(morph.getCategoryGrammemes(morph.getGrammeme("NMbr")).contains(morph.getGrammeme("plur")));
+        assertFalse(morph.getCategoryGrammemes(morph.getGrammeme("NMbr")).contains(morph.getGrammeme("gent")));
         assertEquals(morph.getGrammeme("gent"), tag.Case);
         assertEquals(morph.getGrammeme("sing"), tag.number);
         assertEquals(morph.getGrammeme("neut"), tag.gender);
@@ -115,6 +145,9 @@ public class MorphAnalyzerRUTest {
         // NUMB
         assertParseds("1:NUMB,intg:1:1:1.0", morph.parse("1"));
         assertParseds("1.0:NUMB,real:1.0:1.0:1.0", morph.parse("1.0"));
+        assertParseds("-12:NUMB,intg:-12:-12:1.0", morph.parse("-12"));
+        assertParseds("1e3:NUMB,real:1e3:1e3:1.0", morph.parse("1e3"));
+        assertParseds("99999999999:NUMB,real:99999999999:99999999999:1.0", morph.parse("99999999999"));
 
         // PNCT
         assertParseds(".:PNCT:.:.:1.0", morph.parse("."));
@@ -146,6 +179,636 @@ public class MorphAnalyzerRUTest {
         assertEquals(Arrays.asList("красивый"), morph.normalForms("красивого"));
         assertEquals(Arrays.asList("для", "длить"), morph.normalForms("для"));
         assertEquals(Arrays.asList("лошарик", "лошарика"), morph.normalForms("лошарикам"));
+        assertEquals(new HashSet<>(Arrays.asList("для", "длить")), new HashSet<>(morph.normalForms("для", false)));
+        assertEquals(2, morph.normalForms("лошарикам", false).size());
+    }
+
+    @Test
+    public void test_bestParse() throws IOException {
+        for (String word : Arrays.asList("красивого", "для", "лошарикам", "псевдокошка", "123")) {
+            assertEquals(morph.parse(word).get(0).toString(), morph.bestParse(word).toString());
+        }
+    }
+
+    @Test
+    public void test_parseContext() throws IOException {
+        ParseContext context = morph.newParseContext();
+        for (String word : Arrays.asList("красивого", "Ёлки", "елки", "лошарикам", "псевдокошка", "123", "для")) {
+            char[] buffer = word.toCharArray();
+            morph.parse(buffer, 0, buffer.length, context);
+            assertEquals(morph.parse(word).toString(), context.getParsedWords().toString());
+            assertEquals(morph.normalForms(word).get(0),
+                         new String(context.getBuffer(), context.getNormalFormOffset(0), context.getNormalFormLength(0)));
+        }
+    }
+
+    @Test
+    public void test_parseChars() throws IOException {
+        // Context free methods share a context of the thread,
+        // the results of a word must not change after the next one
+        List<List<ParsedWord>> parseds = new ArrayList<>();
+        List<String> words = Arrays.asList("красивого", "Ёлки", "лошарикам", "псевдокошка", "123", "для", "");
+        for (String word : words) {
+            char[] buffer = ("  " + word + " ").toCharArray();
+            List<ParsedWord> expected = morph.parse(word);
+            parseds.add(expected);
+            assertEquals(expected.toString(), morph.parse(buffer, 2, word.length()).toString());
+            assertEquals(morph.tag(word), morph.tag(buffer, 2, word.length()));
+            assertEquals(morph.normalForms(word), morph.normalForms(buffer, 2, word.length()));
+            assertEquals(String.valueOf(morph.bestParse(word)),
+                         String.valueOf(morph.bestParse(buffer, 2, word.length())));
+        }
+        for (int i = 0; i < words.size(); i++) {
+            assertEquals(morph.parse(words.get(i)).toString(), parseds.get(i).toString());
+        }
+    }
+
+    @Test
+    public void test_releasedContext() throws Exception {
+        ParseContext context = new ParseContext(morph, false);
+        WeakReference<Dictionary> dict = parseAndRelease(context);
+        // The context is still alive, as the one kept by a pooled thread
+        for (int i = 0; i < 50 && dict.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertEquals(null, dict.get());
+        assertEquals(0, context.size());
+    }
+
+    // Parses words with units of a new dictionary, so only the context can keep it
+    private WeakReference<Dictionary> parseAndRelease(ParseContext context) throws IOException {
+        Dictionary.Builder dictBuilder = new Dictionary.Builder(
+            new ResourceFileLoader("/company/evo/jmorphy2/ru/pymorphy2_dicts")
+        );
+        Tag.Storage tagStorage = new Tag.Storage();
+        List<AnalyzerUnit> units = Arrays.asList(
+            new DictionaryUnit.Builder(dictBuilder, true, 1.0f).build(tagStorage),
+            new KnownSuffixUnit.Builder(dictBuilder, true, 0.5f).build(tagStorage)
+        );
+        // Dictionary and predicted words
+        for (String word : Arrays.asList("стаал", "псевдокошка", "кошка")) {
+            context.reset(morph, word);
+            for (AnalyzerUnit unit : units) {
+                unit.parse(context);
+            }
+            context.getParsedWords();
+            context.release();
+        }
+        return new WeakReference<>(dictBuilder.build(tagStorage));
+    }
+
+    @Test
+    public void test_parseConcurrently() throws Exception {
+        List<String> words = Arrays.asList("красивого", "Ёлки", "лошарикам", "псевдокошка", "123", "1.5", "XIV", "hello", ",", "абв");
+        List<String> expected = new ArrayList<>();
+        for (String word : words) {
+            expected.add(morph.parse(word).toString());
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                results.add(executor.submit(() -> {
+                    ParseContext context = morph.newParseContext();
+                    for (int n = 0; n < 1000; n++) {
+                        int i = n % words.size();
+                        String word = words.get(i);
+                        if (!expected.get(i).equals(morph.parse(word, context).getParsedWords().toString())) {
+                            return false;
+                        }
+                    }
+                    return true;
+                }));
+            }
+            for (Future<Boolean> result : results) {
+                assertTrue(result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void test_parseSorted() throws IOException {
+        // unsorted words with duplicates, shared prefixes and substituted characters
+        List<String> words = Arrays.asList("кошка", "кошками", "кошка", "Ёлки", "елки", "ёлки", "елка",
+                                           "красивого", "красивый", "кошка", "лошарикам", "псевдокошка",
+                                           "123", "", "абв", "ко", "кошкам", "для", "для");
+        List<String> sortedWords = new ArrayList<>(words);
+        sortedWords.sort(null);
+        for (List<String> batch : Arrays.asList(words, sortedWords)) {
+            List<List<ParsedWord>> parseds = morph.parseSorted(batch);
+            assertEquals(batch.size(), parseds.size());
+            for (int i = 0; i < batch.size(); i++) {
+                assertEquals(batch.get(i), morph.parse(batch.get(i)).toString(), parseds.get(i).toString());
+            }
+        }
+    }
+
+    @Test
+    public void test_parseAll() throws Exception {
+        List<String> words = Arrays.asList("красивого", "для", "красивого", "лошарикам", "123", "для", "Ёлки");
+        ForkJoinPool pool = new ForkJoinPool(4);
+        ExecutorService threadPool = Executors.newFixedThreadPool(2);
+        ExecutorService cachedPool = Executors.newCachedThreadPool();
+        try {
+            for (Executor executor : Arrays.<Executor>asList(null, pool, threadPool, cachedPool, Runnable::run)) {
+                List<List<ParsedWord>> parseds = morph.parseAll(words, executor);
+                List<List<String>> normalForms = morph.normalFormsAll(words, executor);
+                assertEquals(words.size(), parseds.size());
+                assertEquals(words.size(), normalForms.size());
+                for (int i = 0; i < words.size(); i++) {
+                    assertEquals(morph.parse(words.get(i)).toString(), parseds.get(i).toString());
+                    assertEquals(morph.normalForms(words.get(i)), normalForms.get(i));
+                }
+            }
+        } finally {
+            pool.shutdown();
+            threadPool.shutdown();
+            cachedPool.shutdown();
+        }
+    }
+
+    @Test
+    public void test_cache() throws IOException {
+        MorphAnalyzer cachedMorph = new MorphAnalyzer.Builder<>()
+            .fileLoader(new ResourceFileLoader("/company/evo/jmorphy2/ru/pymorphy2_dicts"))
+            .cacheSize(100)
+            .build();
+        List<String> words = Arrays.asList("Москва", "москва", "МОСКВА", "Ёлки", "псевдокошка", "XIV", "xiv", "Hello", "123");
+        for (int n = 0; n < 2; n++) {
+            for (String word : words) {
+                assertEquals(morph.parse(word).toString(), cachedMorph.parse(word).toString());
+                assertEquals(morph.normalForms(word), cachedMorph.normalForms(word));
+                assertEquals(morph.tag(word), cachedMorph.tag(word));
+                assertEquals(morph.bestParse(word).toString(), cachedMorph.bestParse(word).toString());
+            }
+        }
+        // Case variants of dictionary words share an entry
+        long hitCount = cachedMorph.getCache().getStats().hitCount;
+        cachedMorph.parse("мОсКвА");
+        assertEquals(hitCount + 1, cachedMorph.getCache().getStats().hitCount);
+        assertEquals(0, cachedMorph.getCache().getStats().evictionCount);
+    }
+
+    @Test
+    public void test_offHeapCache() throws IOException {
+        MorphAnalyzer cachedMorph = new MorphAnalyzer.Builder<>()
+            .fileLoader(new ResourceFileLoader("/company/evo/jmorphy2/ru/pymorphy2_dicts"))
+            .offHeapCacheSize(1 << 20)
+            .build();
+        List<String> words = Arrays.asList("Москва", "красивого", "для", "псевдокошка");
+        for (int n = 0; n < 2; n++) {
+            for (String word : words) {
+                assertEquals(morph.parse(word).toString(), cachedMorph.parse(word).toString());
+                assertEquals(morph.parse(word).get(0).getLexeme().toString(),
+                             cachedMorph.parse(word).get(0).getLexeme().toString());
+            }
+        }
+        // A word is parsed 4 times, only the first parse misses the cache
+        ParseCache.Stats stats = cachedMorph.getCache().getStats();
+        assertEquals(words.size() * 3, stats.hitCount);
+        assertEquals(words.size(), stats.missCount);
+    }
+
+    @Test
+    public void test_offHeapCache_largeResults() throws IOException {
+        MorphAnalyzer cachedMorph = new MorphAnalyzer.Builder<>()
+            .fileLoader(new ResourceFileLoader("/company/evo/jmorphy2/ru/pymorphy2_dicts"))
+            .offHeapCacheSize(1 << 20)
+            .build();
+        ParseCache cache = cachedMorph.getCache();
+        // results of several words look like the parses of a very ambiguous word,
+        // they would take more than a slot with the strings written as chars
+        List<ParsedWord> parseds = new ArrayList<>();
+        for (String word : Arrays.asList("сорока", "снега", "кошки")) {
+            parseds.addAll(cachedMorph.parse(word));
+        }
+        assertEquals(8, parseds.size());
+        cache.put("сорока", parseds);
+        assertEquals(parseds.toString(), cache.get("сорока").toString());
+        // strings which are not ASCII or Cyrillic take two bytes per char
+        List<ParsedWord> latinParseds = cachedMorph.parse("männer");
+        cache.put("männer", latinParseds);
+        assertEquals(latinParseds.toString(), cache.get("männer").toString());
+
+        // results which do not fit a slot are not cached and are counted
+        assertEquals(0, cache.getStats().rejectionCount);
+        StringBuilder longWord = new StringBuilder();
+        while (longWord.length() < OffHeapParseCache.SLOT_SIZE) {
+            longWord.append("кошки");
+        }
+        cache.put(longWord.toString(), parseds);
+        assertEquals(null, cache.get(longWord.toString()));
+        assertEquals(1, cache.getStats().rejectionCount);
+    }
+
+    @Test
+    public void test_tieredCache() throws IOException {
+        ParseCache first = new TinyLfuParseCache(10);
+        ParseCache second = new TinyLfuParseCache(10);
+        ParseCache cache = new TieredParseCache(first, second);
+        List<ParsedWord> parseds = morph.parse("кошка");
+
+        // Results found in the second cache are promoted into the first one
+        second.put("кошка", parseds);
+        assertEquals(null, first.get("кошка"));
+        assertEquals(parseds, cache.get("кошка"));
+        assertEquals(parseds, first.get("кошка"));
+        long secondHitCount = second.getStats().hitCount;
+        assertEquals(parseds, cache.get("кошка"));
+        assertEquals(secondHitCount, second.getStats().hitCount);
+
+        // Put goes into both caches, misses are counted by the second one
+        List<ParsedWord> catParseds = morph.parse("кот");
+        cache.put("кот", catParseds);
+        assertEquals(catParseds, first.get("кот"));
+        assertEquals(catParseds, second.get("кот"));
+        assertEquals(null, cache.get("собака"));
+        ParseCache.Stats stats = cache.getStats();
+        assertEquals(first.getStats().hitCount + second.getStats().hitCount, stats.hitCount);
+        assertEquals(second.getStats().missCount, stats.missCount);
+    }
+
+    @Test
+    public void test_cacheSnapshot() throws Exception {
+        MorphAnalyzer cachedMorph = new MorphAnalyzer.Builder<>()
+            .fileLoader(new ResourceFileLoader("/company/evo/jmorphy2/ru/pymorphy2_dicts"))
+            .cacheSize(100)
+            .build();
+        List<String> words = Arrays.asList("Москва", "красивого", "для", "псевдокошка");
+        for (String word : words) {
+            cachedMorph.parse(word);
+        }
+        Path snapshot = Files.createTempFile("jmorphy2-cache", ".snapshot");
+        try {
+            assertEquals(words.size(), cachedMorph.saveCacheSnapshot(snapshot, 10));
+
+            MorphAnalyzer preloadedMorph = new MorphAnalyzer.Builder<>()
+                .fileLoader(new ResourceFileLoader("/company/evo/jmorphy2/ru/pymorphy2_dicts"))
+                .cacheSize(100)
+                .cacheSnapshot(snapshot)
+                .build();
+            assertEquals(words.size(), (int) preloadedMorph.getCachePreload().get());
+            for (String word : words) {
+                assertEquals(morph.parse(word).toString(), preloadedMorph.parse(word).toString());
+            }
+            assertEquals(words.size(), preloadedMorph.getCache().getStats().hitCount);
+
+            // Snapshot of another dictionary is discarded
+            List<String> lines = new ArrayList<>(Files.readAllLines(snapshot));
+            lines.set(0, lines.get(0).replaceAll(" [0-9a-f]+$", " 0000000000000000"));
+            Files.write(snapshot, lines);
+            MorphAnalyzer staleMorph = new MorphAnalyzer.Builder<>()
+                .fileLoader(new ResourceFileLoader("/company/evo/jmorphy2/ru/pymorphy2_dicts"))
+                .cacheSize(100)
+                .cacheSnapshot(snapshot)
+                .build();
+            assertEquals(0, (int) staleMorph.getCachePreload().get());
+        } finally {
+            Files.delete(snapshot);
+        }
+    }
+
+    @Test
+    public void test_cacheSnapshot_recompiledDictionary() throws Exception {
+        MorphAnalyzer cachedMorph = new MorphAnalyzer.Builder<>()
+            .fileLoader(new ResourceFileLoader("/company/evo/jmorphy2/ru/pymorphy2_dicts"))
+            .cacheSize(100)
+            .build();
+        cachedMorph.parse("красивого");
+        Path snapshot = Files.createTempFile("jmorphy2-cache", ".snapshot");
+        try {
+            assertEquals(1, cachedMorph.saveCacheSnapshot(snapshot, 10));
+
+            // The same dictionary compiled at another time
+            FileLoader resources = new ResourceFileLoader("/company/evo/jmorphy2/ru/pymorphy2_dicts");
+            FileLoader recompiled = new FileLoader() {
+                @Override
+                public InputStream newStream(String filename) throws IOException {
+                    InputStream stream = resources.newStream(filename);
+                    if (!filename.equals("meta.json")) {
+                        return stream;
+                    }
+                    String meta;
+                    try (stream) {
+                        meta = new String(stream.readAllBytes(), StandardCharsets.UTF_8);
+                    }
+                    String newMeta = meta.replaceFirst(
+                        "\"compiled_at\"\\s*,\\s*\"[^\"]*\"", "\"compiled_at\", \"1999-12-31T23:59:59\""
+                    );
+                    assertFalse(newMeta.equals(meta));
+                    return new ByteArrayInputStream(newMeta.getBytes(StandardCharsets.UTF_8));
+                }
+            };
+            MorphAnalyzer recompiledMorph = new MorphAnalyzer.Builder<>()
+                .fileLoader(recompiled)
+                .cacheSize(100)
+                .cacheSnapshot(snapshot)
+                .build();
+            assertEquals(0, (int) recompiledMorph.getCachePreload().get());
+        } finally {
+            Files.delete(snapshot);
+        }
+    }
+
+    @Test
+    public void test_hotWords() throws IOException {
+        Path frequencyList = Files.createTempFile("jmorphy2-unigrams", ".txt");
+        try {
+            Files.write(frequencyList, Arrays.asList(
+                "hello\t100\t100",
+                "для\t10\t12",
+                "Москва\t5\t5",
+                "москва\t2\t2",
+                "псевдокошка\t1\t1"
+            ));
+            MorphAnalyzer hotMorph = new MorphAnalyzer.Builder<>()
+                .fileLoader(new ResourceFileLoader("/company/evo/jmorphy2/ru/pymorphy2_dicts"))
+                .hotWords(frequencyList, 3)
+                .build();
+            // Results of latin words depend on the case
+            assertEquals(2, hotMorph.getHotWords().size());
+            List<String> words = Arrays.asList("для", "Москва", "МОСКВА", "псевдокошка", "Hello");
+            for (String word : words) {
+                assertEquals(morph.parse(word).toString(), hotMorph.parse(word).toString());
+                assertEquals(morph.normalForms(word), hotMorph.normalForms(word));
+            }
+            assertEquals(6, hotMorph.getHotWords().getStats().hitCount);
+            assertEquals(4, hotMorph.getHotWords().getStats().missCount);
+        } finally {
+            Files.delete(frequencyList);
+        }
+    }
+
+    @Test
+    public void test_textLemmatizer() throws IOException {
+        String text = "Кто-то купил 1.5 кг красивых ёлок, и hello-world2...";
+        List<String> tokens = new ArrayList<>();
+        TextLemmatizer lemmatizer = new TextLemmatizer(morph);
+        lemmatizer.process(new StringReader(text), (offset, length, type, context) -> {
+            tokens.add(text.substring((int) offset, (int) offset + length) + ":" + type + ":" + context.getNormalForm(0));
+        });
+        assertEquals(Arrays.asList("Кто-то:WORD:кто-то",
+                                   "купил:WORD:купить",
+                                   "1.5:NUMBER:1.5",
+                                   "кг:WORD:кг",
+                                   "красивых:WORD:красивый",
+                                   "ёлок:WORD:ёлка",
+                                   ",:PUNCTUATION:,",
+                                   "и:WORD:и",
+                                   "hello-world2:LATIN:hello-world2",
+                                   "...:PUNCTUATION:..."),
+                     tokens);
+    }
+
+    @Test
+    public void test_wordsWithPrefix() throws IOException {
+        WordsDAWG words = Jmorphy2TestsHelpers.newDictionary("ru").getWords();
+        List<WordsDAWG.WordForm> wordForms = new ArrayList<>();
+        words.wordsWithPrefix("кошк").forEachRemaining(wordForms::add);
+        List<String> foundWords = new ArrayList<>();
+        for (WordsDAWG.WordForm wordForm : wordForms) {
+            assertTrue(wordForm.word.startsWith("кошк"));
+            assertTrue(words.similarWords(wordForm.word, null).contains(wordForm));
+            foundWords.add(wordForm.word);
+        }
+        assertTrue(foundWords.contains("кошка"));
+        // Cyrillic words are ordered as strings
+        List<String> sortedWords = new ArrayList<>(foundWords);
+        sortedWords.sort(null);
+        assertEquals(sortedWords, foundWords);
+
+        List<WordsDAWG.WordForm> limitedWordForms = new ArrayList<>();
+        words.wordsWithPrefix("кошк", 3).forEachRemaining(limitedWordForms::add);
+        assertEquals(wordForms.subList(0, 3), limitedWordForms);
+
+        // The prefix itself goes first
+        assertEquals("кошка", words.wordsWithPrefix("кошка").next().word);
+        assertFalse(words.wordsWithPrefix("кошкщ").hasNext());
+    }
+
+    @Test
+    public void test_fuzzy() throws IOException {
+        Map<Character,String> replaces = new HashMap<>();
+        replaces.put('е', "ё");
+
+        // edit distance 1 and 2, the score is divided by the distance plus one
+        List<ParsedWord> parseds = newFuzzyUnit(null, 1, 10).parse("кошко", "кошко");
+        assertTrue(foundWords(parseds).contains("кошка"));
+        for (ParsedWord p : parseds) {
+            assertEquals(0.25f, p.score, ParsedWord.EPS);
+        }
+        assertFalse(foundWords(newFuzzyUnit(null, 1, 10).parse("кашко", "кашко")).contains("кошка"));
+        parseds = newFuzzyUnit(null, 2, 100).parse("кашко", "кашко");
+        assertTrue(foundWords(parseds).contains("кошка"));
+        for (ParsedWord p : parseds) {
+            if (p.foundWord.equals("кошка")) {
+                assertEquals(0.5f / 3, p.score, ParsedWord.EPS);
+            }
+        }
+
+        // limit counts words, not their parses
+        assertEquals(1, foundWords(newFuzzyUnit(null, 1, 1).parse("кошко", "кошко")).size());
+        assertEquals(2, foundWords(newFuzzyUnit(null, 1, 2).parse("кошко", "кошко")).size());
+
+        // a substituted character is not an edit
+        assertFalse(foundWords(newFuzzyUnit(null, 1, 10).parse("елкы", "елкы")).contains("ёлка"));
+        parseds = newFuzzyUnit(replaces, 1, 10).parse("елкы", "елкы");
+        assertTrue(foundWords(parseds).contains("ёлка"));
+        for (ParsedWord p : parseds) {
+            assertEquals(0.25f, p.score, ParsedWord.EPS);
+        }
+
+        // short words are skipped
+        assertEquals(null, newFuzzyUnit(null, 1, 10).parse("кот", "кот"));
+    }
+
+    @Test
+    public void test_fuzzy_parseContext() throws IOException {
+        Map<Character,String> replaces = new HashMap<>();
+        replaces.put('е', "ё");
+        ParseContext context = new ParseContext(morph, false);
+        for (AnalyzerUnit unit : Arrays.asList(newFuzzyUnit(null, 1, 10),
+                                               newFuzzyUnit(replaces, 2, 10),
+                                               newFuzzyUnit(replaces, 1, 1))) {
+            for (String word : Arrays.asList("кошко", "Кашко", "елкы", "ёлки", "кот", "абвгдеж")) {
+                context.reset(morph, word);
+                List<ParsedWord> parseds = unit.parse(word, word.toLowerCase());
+                assertEquals(word, parseds != null, unit.parse(context));
+                assertEquals(word, parseds != null ? parseds.toString() : "[]", context.getParsedWords().toString());
+            }
+        }
+    }
+
+    private AnalyzerUnit newFuzzyUnit(Map<Character,String> replaceChars, int maxEdits, int limit)
+        throws IOException
+    {
+        Dictionary.Builder dictBuilder = new Dictionary.Builder(
+            new ResourceFileLoader("/company/evo/jmorphy2/ru/pymorphy2_dicts")
+        );
+        DictionaryUnit.Builder dictUnitBuilder = new DictionaryUnit.Builder(dictBuilder, true, 1.0f)
+            .charSubstitutes(replaceChars);
+        return new FuzzyDictionaryUnit.Builder(dictUnitBuilder, true, 0.5f)
+            .maxEdits(maxEdits)
+            .limit(limit)
+            .build(new Tag.Storage());
+    }
+
+    private static List<String> foundWords(List<ParsedWord> parseds) {
+        List<String> foundWords = new ArrayList<>();
+        for (ParsedWord p : parseds) {
+            if (!foundWords.contains(p.foundWord)) {
+                foundWords.add(p.foundWord);
+            }
+        }
+        return foundWords;
+    }
+
+    @Test
+    public void test_prefixed() throws IOException {
+        Map<Character,String> replaces = new HashMap<>();
+        replaces.put('е', "ё");
+        Dictionary.Builder dictBuilder = new Dictionary.Builder(
+            new ResourceFileLoader("/company/evo/jmorphy2/ru/pymorphy2_dicts")
+        );
+        Tag.Storage tagStorage = new Tag.Storage();
+        DictionaryUnit.Builder dictUnitBuilder = new DictionaryUnit.Builder(dictBuilder, true, 1.0f)
+            .charSubstitutes(replaces);
+        Set<String> prefixes = new HashSet<>(Arrays.asList("псевдо", "супер", "квази", "пере", "п"));
+        List<AnalyzerUnit> units = Arrays.asList(
+            new KnownPrefixUnit.Builder(dictUnitBuilder, prefixes, true, 0.75f).build(tagStorage),
+            new UnknownPrefixUnit.Builder(dictUnitBuilder, true, 0.5f).build(tagStorage)
+        );
+
+        List<String> words = new ArrayList<>(Arrays.asList(
+            "псевдокошка", "Суперкот", "квазиелка", "переёлочки", "абвкошка", "кошка", "кот", "ёж", "п"
+        ));
+        List<String> dictWords = new ArrayList<>();
+        dictBuilder.build(tagStorage).getWords().keys(dictWords::add);
+        int step = Math.max(1, dictWords.size() / 500);
+        for (int i = 0; i < dictWords.size(); i += step) {
+            words.add("псевдо" + dictWords.get(i));
+            words.add("Квази" + dictWords.get(i).replace('ё', 'е'));
+            words.add("аб" + dictWords.get(i));
+        }
+
+        // Prefixed words are packed by the context, results must be the same as of the list path
+        ParseContext context = new ParseContext(morph, false);
+        for (AnalyzerUnit unit : units) {
+            for (String word : words) {
+                List<ParsedWord> parseds = unit.parse(word, word.toLowerCase());
+                context.reset(morph, word);
+                assertTrue(word, unit.parse(context));
+                List<ParsedWord> contextParseds = context.getParsedWords();
+                assertEquals(word, parseds.toString(), contextParseds.toString());
+                for (int i = 0; i < parseds.size(); i++) {
+                    assertEquals(word, parseds.get(i).foundWord, contextParseds.get(i).foundWord);
+                    assertEquals(word, parseds.get(i).getLexeme().toString(),
+                                 contextParseds.get(i).getLexeme().toString());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void test_knownSuffix() throws IOException {
+        Map<Character,String> replaces = new HashMap<>();
+        replaces.put('е', "ё");
+        Dictionary.Builder dictBuilder = new Dictionary.Builder(
+            new ResourceFileLoader("/company/evo/jmorphy2/ru/pymorphy2_dicts")
+        );
+        Tag.Storage tagStorage = new Tag.Storage();
+        Dictionary dict = dictBuilder.build(tagStorage);
+        AnalyzerUnit unit = new KnownSuffixUnit.Builder(dictBuilder, true, 0.5f)
+            .charSubstitutes(replaces)
+            .build(tagStorage);
+
+        // Every known suffix after every paradigm prefix must pass the suffix filter
+        List<String> words = new ArrayList<>(Arrays.asList(
+            "кошка", "Псевдокошка", "бутявкой", "ёлочкой", "елочкой", "абвгд", "кот", "йцукен"
+        ));
+        String[] prefixes = dict.getParadigmPrefixes();
+        for (int prefixId = 0; prefixId < prefixes.length; prefixId++) {
+            List<String> suffixes = new ArrayList<>();
+            dict.getPredictionSuffixes(prefixId).keys(suffixes::add);
+            int step = Math.max(1, suffixes.size() / 2000);
+            for (int i = 0; i < suffixes.size(); i += step) {
+                String word = prefixes[prefixId] + "ста" + suffixes.get(i);
+                words.add(word);
+                words.add(word.replace('ё', 'е'));
+            }
+        }
+
+        ParseContext context = new ParseContext(morph, false);
+        for (String word : words) {
+            String wordLower = word.toLowerCase();
+            List<ParsedWord> expected = predictUnfiltered(dict, replaces, wordLower, 0.5f);
+            List<ParsedWord> parseds = unit.parse(word, wordLower);
+            assertEquals(word, expected == null, parseds == null);
+            context.reset(morph, word);
+            assertEquals(word, expected != null, unit.parse(context));
+            if (expected != null) {
+                assertSameParseds(word, expected, parseds);
+                assertSameParseds(word, expected, context.getParsedWords());
+            }
+        }
+    }
+
+    private static void assertSameParseds(String message, List<ParsedWord> expected, List<ParsedWord> parseds) {
+        assertEquals(message, expected, parseds);
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(message, expected.get(i).foundWord, parseds.get(i).foundWord);
+        }
+    }
+
+    // KnownSuffixUnit before the suffix filter, looks up every suffix of the word
+    private List<ParsedWord> predictUnfiltered(Dictionary dict,
+                                               Map<Character,String> replaces,
+                                               String wordLower,
+                                               float unitScore) {
+        int wordLen = wordLower.length();
+        if (wordLen < 4) {
+            return null;
+        }
+        String[] prefixes = dict.getParadigmPrefixes();
+        int[] totalCounts = new int[prefixes.length];
+        Arrays.fill(totalCounts, 1);
+        List<SuffixesDAWG.SuffixForm> suffixForms = new ArrayList<>();
+        List<String> wordStarts = new ArrayList<>();
+        List<Integer> prefixIds = new ArrayList<>();
+        for (int prefixId = 0; prefixId < prefixes.length; prefixId++) {
+            if (!wordLower.startsWith(prefixes[prefixId])) {
+                continue;
+            }
+            for (int i = Math.min(5, wordLen); i >= 1; i--) {
+                String wordStart = wordLower.substring(0, wordLen - i);
+                for (SuffixesDAWG.SuffixForm sf :
+                         dict.getPredictionSuffixes(prefixId).similarSuffixes(wordLower.substring(wordLen - i), replaces)) {
+                    totalCounts[prefixId] += sf.count;
+                    if (dict.buildTag(sf.paradigmId, sf.idx).isProductive()) {
+                        suffixForms.add(sf);
+                        wordStarts.add(wordStart);
+                        prefixIds.add(prefixId);
+                    }
+                }
+                if (suffixForms.size() > 0) {
+                    break;
+                }
+            }
+        }
+        List<ParsedWord> parseds = new ArrayList<>();
+        for (int k = 0; k < suffixForms.size(); k++) {
+            SuffixesDAWG.SuffixForm sf = suffixForms.get(k);
+            String word = wordStarts.get(k) + sf.word;
+            parseds.add(new ParsedWordMock(word,
+                                           dict.buildTag(sf.paradigmId, sf.idx),
+                                           dict.buildNormalForm(sf.paradigmId, sf.idx, word),
+                                           sf.word,
+                                           unitScore * sf.count / totalCounts[prefixIds.get(k)]));
+        }
+        return parseds;
     }
 
     @Test
@@ -156,6 +819,163 @@ public class MorphAnalyzerRUTest {
                      morph.tag("красивого"));
     }
 
+    @Test
+    public void test_tagStorageConcurrently() throws Exception {
+        // 4 categories with 2 levels of grammemes, more than 64 grammemes in total
+        List<List<String>> grammemeInfos = new ArrayList<>();
+        List<String> tagStrings = new ArrayList<>();
+        for (int k = 0; k < 4; k++) {
+            grammemeInfos.add(Arrays.asList("Cat" + k, "", "", ""));
+            for (int i = 0; i < 8; i++) {
+                grammemeInfos.add(Arrays.asList("g" + k + i, "Cat" + k, "", ""));
+                grammemeInfos.add(Arrays.asList("h" + k + i, "g" + k + i, "", ""));
+                tagStrings.add("Cat" + k + ",g" + k + i + " h" + k + i);
+            }
+        }
+        Tag.Storage storage = new Tag.Storage();
+        int numThreads = 8;
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        try {
+            List<Future<List<Object>>> results = new ArrayList<>();
+            for (int t = 0; t < numThreads; t++) {
+                Random rnd = new Random(t);
+                results.add(executor.submit(() -> {
+                    // children are registered before their parents by some threads
+                    List<List<String>> infos = new ArrayList<>(grammemeInfos);
+                    Collections.shuffle(infos, rnd);
+                    List<String> tags = new ArrayList<>(tagStrings);
+                    Collections.shuffle(tags, rnd);
+                    start.await();
+                    Map<String,Object> registered = new HashMap<>();
+                    for (List<String> info : infos) {
+                        registered.put(info.get(0), storage.newGrammeme(info));
+                    }
+                    for (String tagString : tags) {
+                        Tag tag = storage.newTag(tagString);
+                        assertTrue(storage.getTag(tag.getId()) == tag);
+                        registered.put(tagString, tag);
+                    }
+                    List<Object> ordered = new ArrayList<>();
+                    for (List<String> info : grammemeInfos) {
+                        ordered.add(registered.get(info.get(0)));
+                    }
+                    for (String tagString : tagStrings) {
+                        ordered.add(registered.get(tagString));
+                    }
+                    return ordered;
+                }));
+            }
+            start.countDown();
+            List<Object> expected = results.get(0).get();
+            for (Future<List<Object>> result : results) {
+                List<Object> found = result.get();
+                for (int i = 0; i < expected.size(); i++) {
+                    assertTrue(expected.get(i) == found.get(i));
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        // ordinals and ids are dense
+        assertEquals(grammemeInfos.size(), storage.getAllGrammemes().size());
+        for (int ordinal = 0; ordinal < grammemeInfos.size(); ordinal++) {
+            assertEquals(ordinal, storage.grammemeAt(ordinal).ordinal);
+        }
+        assertEquals(tagStrings.size(), storage.getAllTags().size());
+        for (int id = 0; id < tagStrings.size(); id++) {
+            assertEquals(id, storage.getTag(id).getId());
+        }
+        // the hierarchy does not depend on the order of registration
+        for (int k = 0; k < 4; k++) {
+            Grammeme root = storage.getGrammeme("Cat" + k);
+            assertEquals(16, storage.getCategoryGrammemes(root).size());
+            for (int i = 0; i < 8; i++) {
+                Grammeme grammeme = storage.getGrammeme("h" + k + i);
+                assertEquals(storage.getGrammeme("g" + k + i), grammeme.getParent());
+                assertEquals(root, grammeme.getRoot());
+                Tag tag = storage.getTag("h" + k + i + " g" + k + i + ",Cat" + k);
+                assertTrue(tag.contains(grammeme));
+                assertTrue(tag.containsAll(Tag.grammemesMask(Arrays.asList(root, grammeme))));
+                assertTrue(Arrays.asList(grammeme, grammeme.getParent()).contains(tag.getGrammemeFor(root)));
+            }
+        }
+    }
+
+    @Test
+    public void test_grammemesMask() throws IOException {
+        Tag tag = morph.getTag("NOUN,anim,masc sing,nomn");
+        assertTrue(tag.containsAll(grammemesMask("NOUN", "sing")));
+        assertTrue(tag.containsAll(grammemesMask("NOUN", "anim", "masc", "sing", "nomn")));
+        assertFalse(tag.containsAll(grammemesMask("NOUN", "plur")));
+        assertFalse(tag.containsAll(grammemesMask("ADJF")));
+        assertTrue(tag.containsAll(new long[0]));
+        assertTrue(tag.containsAny(grammemesMask("plur", "nomn")));
+        assertFalse(tag.containsAny(grammemesMask("plur", "ADJF")));
+        assertFalse(tag.containsAny(new long[0]));
+
+        // masks of single grammemes agree with contains for every tag,
+        // masks can be shorter or longer than masks of the tags
+        for (Tag t : morph.getAllTags()) {
+            for (Grammeme grammeme : morph.getAllGrammemes()) {
+                long[] mask = Tag.grammemesMask(Arrays.asList(grammeme));
+                assertEquals(t + " " + grammeme, t.contains(grammeme), t.containsAll(mask));
+                assertEquals(t + " " + grammeme, t.contains(grammeme), t.containsAny(mask));
+            }
+        }
+    }
+
+    @Test
+    public void test_grammemesMask_storages() throws IOException {
+        MorphAnalyzer otherMorph = Jmorphy2TestsHelpers.newMorphAnalyzer("ru");
+        Grammeme otherAdjf = otherMorph.getGrammeme("ADJF");
+        try {
+            Tag.grammemesMask(Arrays.asList(morph.getGrammeme("NOUN"), otherAdjf));
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException e) {}
+
+        // grammemes of another storage are never contained in the tags
+        ParsedWord parsed = morph.parse("красивого").get(0);
+        assertEquals(Arrays.asList(), parsed.inflect(Arrays.asList(otherAdjf)));
+        List<Grammeme> required = Arrays.asList(morph.getGrammeme("ADJF"), morph.getGrammeme("femn"));
+        assertFalse(parsed.inflect(required).isEmpty());
+        assertEquals(parsed.inflect(required).toString(),
+                     parsed.inflect(required, Arrays.asList(otherMorph.getGrammeme("femn"))).toString());
+        assertEquals(0, morph.getTag("NOUN,anim,masc sing,nomn").getStorage()
+                     .grammemesMask(Arrays.asList(otherAdjf)).length);
+    }
+
+    @Test
+    public void test_grammemesMask_unknown() throws IOException {
+        Grammeme unknown = morph.getGrammeme("NoSuchGrammeme");
+        assertEquals(null, unknown);
+        // unknown grammemes are skipped
+        assertTrue(Arrays.equals(grammemesMask("NOUN"), grammemesMask("NOUN", "NoSuchGrammeme")));
+        assertEquals(0, Tag.grammemesMask(Arrays.asList(unknown)).length);
+        Tag tag = morph.getTag("NOUN,anim,masc sing,nomn");
+        assertTrue(Arrays.equals(grammemesMask("NOUN"),
+                                 tag.getStorage().grammemesMask(Arrays.asList(morph.getGrammeme("NOUN"), unknown))));
+
+        // required unknown grammeme matches nothing, excluded one excludes nothing
+        ParsedWord parsed = morph.parse("красивого").get(0);
+        assertEquals(Arrays.asList(), parsed.inflect(Arrays.asList(morph.getGrammeme("ADJF"), unknown)));
+        List<Grammeme> required = Arrays.asList(morph.getGrammeme("ADJF"), morph.getGrammeme("femn"));
+        assertFalse(parsed.inflect(required).isEmpty());
+        assertEquals(parsed.inflect(required).toString(),
+                     parsed.inflect(required, Arrays.asList(unknown)).toString());
+        assertEquals(parsed.inflect(required, Arrays.asList(morph.getGrammeme("Supr"))).toString(),
+                     parsed.inflect(required, Arrays.asList(morph.getGrammeme("Supr"), unknown)).toString());
+    }
+
+    private long[] grammemesMask(String... grammemeValues) {
+        List<Grammeme> grammemes = new ArrayList<>();
+        for (String grammemeValue : grammemeValues) {
+            grammemes.add(morph.getGrammeme(grammemeValue));
+        }
+        return Tag.grammemesMask(grammemes);
+    }
+
     @Test
     public void test_getLexeme() throws IOException {
         List<ParsedWord> parseds;
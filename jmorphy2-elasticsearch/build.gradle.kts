@@ -55,7 +55,6 @@ dependencies {
 
     testImplementation("org.apache.logging.log4j:log4j-core:${versions["log4j"]}")
 
-    add("shadow", "com.github.ben-manes.caffeine:caffeine:${Versions.caffeine}")
     add("shadowClasses", files(shadowClassesDir) {
         builtBy("generateShadowClasses")
     })
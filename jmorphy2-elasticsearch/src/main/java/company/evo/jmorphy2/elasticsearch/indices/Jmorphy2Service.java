@@ -27,9 +27,13 @@ import company.evo.jmorphy2.nlp.SimpleTagger;
 import company.evo.jmorphy2.nlp.SubjectExtractor;
 import company.evo.jmorphy2.nlp.Tagger;
 
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.message.ParameterizedMessage;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.env.Environment;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
@@ -39,16 +43,45 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 
-public class Jmorphy2Service {
+public class Jmorphy2Service implements Closeable {
+    private static final Logger logger = LogManager.getLogger(Jmorphy2Service.class);
+
     private static final String JMORPHY2_DICT_LOCATION_SETTING =
         "indices.analysis.jmorphy2.dictionary.location";
     private static final String DEFAULT_JMORPHY2_DICT_LOCATION = "jmorphy2";
+    private static final String JMORPHY2_DICT_MMAP_SETTING =
+        "indices.analysis.jmorphy2.dictionary.mmap";
+    private static final String JMORPHY2_DICT_DECODE_PAYLOADS_SETTING =
+        "indices.analysis.jmorphy2.dictionary.decode_payloads";
+    // Bytes of the off-heap cache of every analyzer, disabled by default
+    private static final String JMORPHY2_CACHE_OFF_HEAP_SIZE_SETTING =
+        "indices.analysis.jmorphy2.cache.off_heap_size";
+    // Number of the hottest words of every analyzer cache which are saved on close
+    // and parsed again when the analyzer is loaded, disabled by default
+    private static final String JMORPHY2_CACHE_SNAPSHOT_SIZE_SETTING =
+        "indices.analysis.jmorphy2.cache.snapshot.size";
+    // Directory of the snapshots, relative to the first data path
+    private static final String JMORPHY2_CACHE_SNAPSHOT_LOCATION_SETTING =
+        "indices.analysis.jmorphy2.cache.snapshot.location";
+    private static final String DEFAULT_JMORPHY2_CACHE_SNAPSHOT_LOCATION = "jmorphy2";
+    // Seconds between snapshots, snapshots are only saved on close by default
+    private static final String JMORPHY2_CACHE_SNAPSHOT_INTERVAL_SETTING =
+        "indices.analysis.jmorphy2.cache.snapshot.interval_sec";
 
     private final Environment env;
 
     private final Path jmorphy2Dir;
+    private final boolean mmap;
+    private final boolean decodePayloads;
+    private final long offHeapCacheSize;
+    private final int cacheSnapshotSize;
+    private final Path cacheSnapshotDir;
+    private final ScheduledExecutorService cacheSnapshotScheduler;
 
     private final Map<MorphAnalyzerCacheKey, MorphAnalyzer> morphAnalyzers = new ConcurrentHashMap<>();
     private final Map<SubjectExtractorCacheKey, SubjectExtractor> subjectExtractors = new ConcurrentHashMap<>();
@@ -56,6 +89,64 @@ public class Jmorphy2Service {
     public Jmorphy2Service(final Settings settings, final Environment env) {
         this.env = env;
         this.jmorphy2Dir = resolveJmorphy2Directory(settings, env);
+        this.mmap = settings.getAsBoolean(JMORPHY2_DICT_MMAP_SETTING, false);
+        this.decodePayloads = settings.getAsBoolean(JMORPHY2_DICT_DECODE_PAYLOADS_SETTING, false);
+        this.offHeapCacheSize = settings.getAsLong(JMORPHY2_CACHE_OFF_HEAP_SIZE_SETTING, 0L);
+        this.cacheSnapshotSize = settings.getAsInt(JMORPHY2_CACHE_SNAPSHOT_SIZE_SETTING, 0);
+        this.cacheSnapshotDir = env.dataFiles()[0].resolve(
+            settings.get(JMORPHY2_CACHE_SNAPSHOT_LOCATION_SETTING, DEFAULT_JMORPHY2_CACHE_SNAPSHOT_LOCATION)
+        );
+        long cacheSnapshotInterval = settings.getAsLong(JMORPHY2_CACHE_SNAPSHOT_INTERVAL_SETTING, 0L);
+        if (cacheSnapshotSize > 0 && cacheSnapshotInterval > 0) {
+            cacheSnapshotScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "jmorphy2-cache-snapshot");
+                thread.setDaemon(true);
+                return thread;
+            });
+            cacheSnapshotScheduler.scheduleWithFixedDelay(
+                this::saveCacheSnapshots, cacheSnapshotInterval, cacheSnapshotInterval, TimeUnit.SECONDS
+            );
+        } else {
+            cacheSnapshotScheduler = null;
+        }
+    }
+
+    @Override
+    public void close() {
+        if (cacheSnapshotScheduler != null) {
+            cacheSnapshotScheduler.shutdownNow();
+        }
+        saveCacheSnapshots();
+    }
+
+    // Also runs periodically, an exception thrown from here would cancel later saves
+    private void saveCacheSnapshots() {
+        if (cacheSnapshotSize <= 0) {
+            return;
+        }
+        for (Map.Entry<MorphAnalyzerCacheKey, MorphAnalyzer> entry : morphAnalyzers.entrySet()) {
+            MorphAnalyzer morph = entry.getValue();
+            // Analyzers which are still preloading would save a partial snapshot
+            if (!morph.getCachePreload().isDone()) {
+                continue;
+            }
+            Path snapshotFile = cacheSnapshotFile(entry.getKey());
+            try {
+                Files.createDirectories(cacheSnapshotDir);
+                morph.saveCacheSnapshot(snapshotFile, cacheSnapshotSize);
+            } catch (IOException | RuntimeException e) {
+                // The previous snapshot is kept
+                logger.warn(
+                    new ParameterizedMessage("Error when saving jmorphy2 cache snapshot: [{}]", snapshotFile), e
+                );
+            }
+        }
+    }
+
+    private Path cacheSnapshotFile(MorphAnalyzerCacheKey key) {
+        return cacheSnapshotDir.resolve(
+            String.format(Locale.ROOT, "%s-%08x.snapshot", key.lang, key.hashCode())
+        );
     }
 
     public MorphAnalyzer getMorphAnalyzer(String lang, String substitutesPath, Integer cacheSize) {
@@ -91,9 +182,15 @@ public class Jmorphy2Service {
     {
         Path dictsPath = jmorphy2Dir.resolve(key.lang).resolve("pymorphy2_dicts");
         if (Files.isDirectory(dictsPath) && Files.isRegularFile(dictsPath.resolve("meta.json"))) {
-            var morphBuilder = new CachingMorphAnalyzer.Builder()
+            var morphBuilder = new MorphAnalyzer.Builder<>()
                 .cacheSize(key.cacheSize)
-                .dictPath(dictsPath.toString());
+                .offHeapCacheSize(offHeapCacheSize)
+                .dictPath(dictsPath.toString())
+                .mmap(mmap)
+                .decodePayloads(decodePayloads);
+            if (cacheSnapshotSize > 0) {
+                morphBuilder.cacheSnapshot(cacheSnapshotFile(key));
+            }
             if (key.substitutesPath != null) {
                 Path substitutesPath = env.configFile().resolve(key.substitutesPath);
                 morphBuilder.charSubstitutes(parseSubstitutes(substitutesPath));
@@ -115,9 +212,14 @@ public class Jmorphy2Service {
                 return Optional.empty();
             }
         }
-        var morphBuilder = new CachingMorphAnalyzer.Builder()
+        var morphBuilder = new MorphAnalyzer.Builder<>()
             .cacheSize(key.cacheSize)
-            .fileLoader(loader);
+            .offHeapCacheSize(offHeapCacheSize)
+            .fileLoader(loader)
+            .decodePayloads(decodePayloads);
+        if (cacheSnapshotSize > 0) {
+            morphBuilder.cacheSnapshot(cacheSnapshotFile(key));
+        }
         if (key.substitutesPath != null) {
             Path substitutesPath = env.configFile().resolve(key.substitutesPath);
             morphBuilder.charSubstitutes(parseSubstitutes(substitutesPath));
@@ -16,6 +16,7 @@
 
 package company.evo.jmorphy2.elasticsearch.plugin;
 
+import java.io.IOException;
 import java.nio.file.Path;
 import java.util.HashMap;
 import java.util.Map;
@@ -41,6 +42,11 @@ public class AnalysisJmorphy2Plugin extends Plugin implements AnalysisPlugin {
         jmorphy2Service = new Jmorphy2Service(settings, env);
     }
 
+    @Override
+    public void close() throws IOException {
+        jmorphy2Service.close();
+    }
+
     @Override
     public Map<String, AnalysisProvider<TokenFilterFactory>> getTokenFilters() {
         Map<String, AnalysisProvider<TokenFilterFactory>> tokenFilters = new HashMap<>();
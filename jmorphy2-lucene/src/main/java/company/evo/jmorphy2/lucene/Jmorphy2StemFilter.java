@@ -1,11 +1,11 @@
 package company.evo.jmorphy2.lucene;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Set;
 import java.util.HashSet;
 import java.util.List;
 import java.util.ArrayList;
-import java.util.Iterator;
 
 import org.apache.lucene.analysis.TokenFilter;
 import org.apache.lucene.analysis.TokenStream;
@@ -15,7 +15,8 @@ import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
 
 import company.evo.jmorphy2.Grammeme;
 import company.evo.jmorphy2.MorphAnalyzer;
-import company.evo.jmorphy2.ParsedWord;
+import company.evo.jmorphy2.ParseContext;
+import company.evo.jmorphy2.Tag;
 
 
 public class Jmorphy2StemFilter extends TokenFilter {
@@ -24,11 +25,16 @@ public class Jmorphy2StemFilter extends TokenFilter {
     private final KeywordAttribute keywordAtt = addAttribute(KeywordAttribute.class);
 
     private final MorphAnalyzer morph;
-    private final List<Set<Grammeme>> includeGrammemes;
-    private final List<Set<Grammeme>> excludeGrammemes;
+    // Masks of the grammemes sets, see Tag.grammemesMask
+    private final List<long[]> includeGrammemes;
+    private final List<long[]> excludeGrammemes;
     private final boolean enablePositionIncrements;
+    private final ParseContext parseContext;
 
-    private Iterator<String> normalForms = null;
+    // Indexes of the parse results with unique normal forms
+    private int[] normalForms = new int[8];
+    private int normalFormsSize = 0;
+    private int normalFormsPos = 0;
     private State savedState = null;
     private boolean first = true;
     private int skippedPositions = 0;
@@ -58,22 +64,30 @@ public class Jmorphy2StemFilter extends TokenFilter {
         this.includeGrammemes = convertValuesToGrammemes(includeTags);
         this.excludeGrammemes = convertValuesToGrammemes(excludeTags);
         this.enablePositionIncrements = enablePositionIncrements;
+        this.parseContext = morph.newParseContext();
     }
 
-    private List<Set<Grammeme>> convertValuesToGrammemes(List<Set<String>> valuesSets) {
+    private List<long[]> convertValuesToGrammemes(List<Set<String>> valuesSets) {
         if (valuesSets == null) {
             return null;
         }
 
-        List<Set<Grammeme>> grammemesSets = new ArrayList<>();
+        List<long[]> grammemesSets = new ArrayList<>();
         for (Set<String> valueSet : valuesSets) {
             Set<Grammeme> grammemeSet = new HashSet<>();
+            boolean hasUnknown = false;
             for (String value : valueSet) {
-                grammemeSet.add(morph.getGrammeme(value));
+                Grammeme grammeme = morph.getGrammeme(value);
+                if (grammeme == null) {
+                    hasUnknown = true;
+                    break;
+                }
+                grammemeSet.add(grammeme);
             }
 
-            if (!grammemeSet.isEmpty()) {
-                grammemesSets.add(grammemeSet);
+            // Tags never contain an unknown grammeme, so such a set matches nothing
+            if (!hasUnknown && !grammemeSet.isEmpty()) {
+                grammemesSets.add(Tag.grammemesMask(grammemeSet));
             }
         }
 
@@ -83,14 +97,15 @@ public class Jmorphy2StemFilter extends TokenFilter {
     @Override
     public void reset() throws IOException {
         super.reset();
-        normalForms = null;
+        normalFormsSize = 0;
+        normalFormsPos = 0;
         first = true;
         skippedPositions = 0;
     }
 
     @Override
     public final boolean incrementToken() throws IOException {
-        if (normalForms == null || !normalForms.hasNext()) {
+        if (normalFormsPos == normalFormsSize) {
             skippedPositions = 0;
 
             while (input.incrementToken()) {
@@ -98,11 +113,11 @@ public class Jmorphy2StemFilter extends TokenFilter {
                     return true;
                 }
 
-                normalForms = getNormalForms(termAtt).iterator();
+                findNormalForms(termAtt);
 
-                if (normalForms.hasNext()) {
-                    setTerm(normalForms.next(), posIncAtt.getPositionIncrement());
-                    if (normalForms.hasNext()) {
+                if (normalFormsPos < normalFormsSize) {
+                    setTerm(normalForms[normalFormsPos++], posIncAtt.getPositionIncrement());
+                    if (normalFormsPos < normalFormsSize) {
                         savedState = captureState();
                     }
                     skippedPositions = 0;
@@ -116,33 +131,42 @@ public class Jmorphy2StemFilter extends TokenFilter {
         }
 
         restoreState(savedState);
-        setTerm(normalForms.next(), 0);
+        setTerm(normalForms[normalFormsPos++], 0);
         return true;
     }
 
-    private List<String> getNormalForms(CharTermAttribute termAtt) {
-        List<String> normalForms = new ArrayList<>();
-        Set<String> uniqueNormalForms = new HashSet<>();
+    private void findNormalForms(CharTermAttribute termAtt) {
+        normalFormsSize = 0;
+        normalFormsPos = 0;
 
-        char[] termBuffer = termAtt.buffer();
-        int termLength = termAtt.length();
-        String token = new String(termBuffer, 0, termLength);
+        if (includeGrammemes == null && excludeGrammemes == null) {
+            morph.normalForms(termAtt.buffer(), 0, termAtt.length(), true, parseContext);
+            if (normalForms.length < parseContext.size()) {
+                normalForms = new int[parseContext.size()];
+            }
+            for (int i = 0; i < parseContext.size(); i++) {
+                normalForms[i] = i;
+            }
+            normalFormsSize = parseContext.size();
+            return;
+        }
 
-        List<ParsedWord> parseds = morph.parse(token);
+        morph.parse(termAtt.buffer(), 0, termAtt.length(), parseContext);
 
-        for (ParsedWord p : parseds) {
+        for (int i = 0; i < parseContext.size(); i++) {
+            Tag tag = parseContext.getTag(i);
             boolean shouldAdd = false;
             if (includeGrammemes != null) {
-                for (Set<Grammeme> includeGrammemeSet : includeGrammemes) {
-                    if (p.tag.containsAll(includeGrammemeSet)) {
+                for (long[] includeGrammemeSet : includeGrammemes) {
+                    if (tag.containsAll(includeGrammemeSet)) {
                         shouldAdd = true;
                         break;
                     }
                 }
             } else if (excludeGrammemes != null) {
                 boolean shouldExclude = false;
-                for (Set<Grammeme> excludeGrammemeSet : excludeGrammemes) {
-                    if (p.tag.containsAll(excludeGrammemeSet)) {
+                for (long[] excludeGrammemeSet : excludeGrammemes) {
+                    if (tag.containsAll(excludeGrammemeSet)) {
                         shouldExclude = true;
                         break;
                     }
@@ -154,18 +178,28 @@ public class Jmorphy2StemFilter extends TokenFilter {
                 shouldAdd = true;
             }
 
-            if (shouldAdd && !uniqueNormalForms.contains(p.normalForm)) {
-                normalForms.add(p.normalForm);
-                uniqueNormalForms.add(p.normalForm);
+            if (shouldAdd && !containsNormalForm(i)) {
+                if (normalFormsSize == normalForms.length) {
+                    normalForms = Arrays.copyOf(normalForms, normalFormsSize * 2);
+                }
+                normalForms[normalFormsSize++] = i;
             }
         }
+    }
 
-        return normalForms;
+    private boolean containsNormalForm(int i) {
+        for (int j = 0; j < normalFormsSize; j++) {
+            if (parseContext.normalFormEquals(normalForms[j], i)) {
+                return true;
+            }
+        }
+        return false;
     }
 
-    private void setTerm(String stem, int posInc) {
-        termAtt.copyBuffer(stem.toCharArray(), 0, stem.length());
-        termAtt.setLength(stem.length());
+    private void setTerm(int i, int posInc) {
+        int offset = parseContext.getNormalFormOffset(i);
+        int length = parseContext.getNormalFormLength(i);
+        termAtt.copyBuffer(parseContext.getBuffer(), offset, length);
 
         if (enablePositionIncrements) {
             posIncAtt.setPositionIncrement(posInc + skippedPositions);
@@ -22,17 +22,17 @@ import company.evo.jmorphy2.MorphAnalyzer;
 public class Jmorphy2StemFilterFactory extends TokenFilterFactory implements ResourceLoaderAware {
     public static final String DICT_PATH_ATTR = "dict";
     public static final String REPLACES_PATH_ATTR = "replaces";
-    // public static final String CACHE_SIZE_ATTR = "cacheSize";
+    public static final String CACHE_SIZE_ATTR = "cacheSize";
     public static final String EXCLUDE_TAGS_ATTR = "excludeTags";
     public static final String INCLUDE_TAGS_ATTR = "includeTags";
     public static final String ENABLE_POSITION_INCREMENTS_ATTR = "enablePositionIncrements";
 
     public static final String DEFAULT_DICT_PATH = "pymorphy2_dicts";
-    // public static final int DEFAULT_CACHE_SIZE = 10000;
 
     private MorphAnalyzer morph;
     private final String dictPath;
     private final String replacesPath;
+    private final int cacheSize;
     private final List<Set<String>> includeTags;
     private final List<Set<String>> excludeTags;
     private final boolean enablePositionIncrements;
@@ -47,6 +47,7 @@ public class Jmorphy2StemFilterFactory extends TokenFilterFactory implements Res
 
         this.dictPath = dictPath;
         this.replacesPath = args.get(REPLACES_PATH_ATTR);
+        this.cacheSize = getInt(args, CACHE_SIZE_ATTR, MorphAnalyzer.Builder.DEFAULT_CACHE_SIZE);
         this.excludeTags = parseTags(args.get(EXCLUDE_TAGS_ATTR));
         this.includeTags = parseTags(args.get(INCLUDE_TAGS_ATTR));
         this.enablePositionIncrements = getBoolean(args, ENABLE_POSITION_INCREMENTS_ATTR, true);
@@ -61,6 +62,7 @@ public class Jmorphy2StemFilterFactory extends TokenFilterFactory implements Res
         morph = new MorphAnalyzer.Builder<>()
             .fileLoader(new LuceneFileLoader(loader, dictPath))
             .charSubstitutes(replaceChars)
+            .cacheSize(cacheSize)
             .build();
     }
 
@@ -92,6 +92,21 @@ public class Jmorphy2StemFilterTest extends BaseFilterTestCase {
                          new int[0]);
     }
 
+    @Test
+    public void testUnknownGrammemes() throws IOException {
+        // a set with an unknown grammeme never matches
+        List<Set<String>> includeUnknown = List.of(Set.of("NOUN", "NoSuchGrammeme"));
+        assertAnalyzesTo(getAnalyzer(includeUnknown, null, true),
+                         "тест стеммера",
+                         new String[0],
+                         new int[0]);
+        List<Set<String>> excludeUnknown = List.of(Set.of("UNKN", "NoSuchGrammeme"));
+        assertAnalyzesTo(getAnalyzer(null, excludeUnknown, true),
+                         "ъь ъё",
+                         new String[]{"ъь", "ъё"},
+                         new int[]{1, 1});
+    }
+
     @Test
     public void testSaveAll() throws IOException {
         Analyzer analyzer = getAnalyzer(null, null, true);
@@ -48,10 +48,8 @@ public class SimpleParser extends Parser {
         if (rootGrammeme == null) {
             return Collections.emptySet();
         }
-        for (Grammeme grammeme : morph.getAllGrammemes()) {
-            if (rootGrammeme.equals(grammeme.getRoot())) {
-                values.add(grammeme.value);
-            }
+        for (Grammeme grammeme : morph.getCategoryGrammemes(rootGrammeme)) {
+            values.add(grammeme.value);
         }
         return values;
     }